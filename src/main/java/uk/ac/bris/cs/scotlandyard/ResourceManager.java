@@ -17,6 +17,7 @@ import io.github.classgraph.ClassGraph;
 import javafx.geometry.Point2D;
 import javafx.scene.image.Image;
 import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
@@ -36,6 +37,7 @@ public final class ResourceManager {
 	private Map<Ticket, Image> ticketResources;
 	private Map<Integer, Entry<Integer, Integer>> mapCoordinates;
 	private ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private CompiledGraph compiledGraph;
 
 	/**
 	 * Loads all resources into memory <br>
@@ -57,6 +59,7 @@ public final class ResourceManager {
 
 		mapCoordinates = ImmutableMap.copyOf(ScotlandYard.pngMapPositionEntries());
 		graph = ScotlandYard.standardGraph();
+		compiledGraph = CompiledGraph.of(graph);
 	}
 
 	private static Image loadImage(String path) {
@@ -72,6 +75,11 @@ public final class ResourceManager {
 	@Nonnull
 	public ImmutableValueGraph<Integer, ImmutableSet<Transport>> getGraph() { return graph; }
 
+	/**
+	 * @return the compiled form of {@link #getGraph()}, for lookups that happen frequently
+	 */
+	@Nonnull public CompiledGraph getCompiledGraph() { return compiledGraph; }
+
 	@javax.annotation.Nullable public Point2D coordinateAtNode(int node) {
 		var entry = mapCoordinates.get(node);
 		return new Point2D(entry.getKey(), entry.getValue());
@@ -0,0 +1,382 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveList;
+import uk.ac.bris.cs.scotlandyard.model.MrXCandidates;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Iterative deepening alpha-beta search for Mr X.
+ * <br>
+ * The tree alternates Mr X's move with a layer where every detective still to move makes one
+ * move, in slot order, so a round costs two plies of depth rather than one for each detective.
+ * Detectives are assumed to know where Mr X is, so the search plays safe. Leaves are scored by
+ * how far the detectives are from Mr X and how many double and secret tickets he has left.
+ * <br>
+ * Searches run on every core in the Lazy SMP style: all threads deepen the same root and share a
+ * lockless {@link TranspositionTable}, helpers starting a ply deeper or trying root moves in a
+ * different order so they fill the table with results the others can use. Each iteration after
+ * the first few starts with an aspiration window around the previous score. When the time is
+ * nearly up the search stops and plays the best move of the deepest finished iteration. The
+ * depth reached and nodes per second are logged and available from {@link #depth()} and
+ * {@link #nodesPerSecond()}.
+ * <br>
+ * As a detective, the Ai moves towards the nearest station Mr X could be at instead.
+ */
+public final class AlphaBetaAi implements Ai {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AlphaBetaAi.class);
+
+	static final int WIN = 1_000_000;
+	private static final int INFINITY = WIN + 1;
+	private static final int WINDOW = 40;
+	private static final int MAX_DEPTH = 64;
+
+	private final int threads;
+	private final TranspositionTable table = new TranspositionTable(20);
+	private ExecutorService executor;
+	private MrXCandidates candidates;
+	private volatile double nodesPerSecond;
+	private volatile int depth;
+
+	/**
+	 * Creates an Ai searching on every core
+	 */
+	public AlphaBetaAi() { this(Runtime.getRuntime().availableProcessors()); }
+
+	/**
+	 * @param threads the number of threads searching at once
+	 */
+	public AlphaBetaAi(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Threads must be positive: " + threads);
+		this.threads = threads;
+	}
+
+	@Nonnull @Override public String name() { return "Alpha-beta"; }
+
+	@Override public synchronized void onStart() { candidates = null; }
+
+	@Nonnull @Override public synchronized Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		long start = System.nanoTime();
+		long deadline = Deadline.of(timeoutPair);
+		ImmutableSet<Move> moves = board.getAvailableMoves();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		Optional<Move> book = OpeningBook.standard().lookup(board);
+		if (book.isPresent()) return book.get();
+		Move any = moves.iterator().next();
+		if (!any.commencedBy().isMrX()) return chase(board, moves);
+		if (moves.size() == 1) return any;
+
+		table.nextGeneration();
+		Result result = new Result(deadline);
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+					.setNameFormat("alpha-beta-%d").setDaemon(true).build());
+		}
+		List<Future<?>> futures = new ArrayList<>();
+		for (int id = 0; id < threads; id++) {
+			Searcher searcher = new Searcher(SearchState.of(board, any.source()), id, result);
+			futures.add(executor.submit(searcher::run));
+		}
+		try {
+			for (Future<?> future : futures) future.get();
+		} catch (InterruptedException e) {
+			result.stop = true;
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search failed", e.getCause());
+		}
+
+		Move best = any;
+		for (Move move : moves) {
+			if (PackedMove.pack(move) == result.move) best = move;
+		}
+		long elapsed = System.nanoTime() - start;
+		double rate = result.nodes.get() / (elapsed / 1e9);
+		nodesPerSecond = rate;
+		depth = result.depth;
+		// Logged from the pool once the move is handed back, as the first message sets up logging
+		Move picked = best;
+		executor.execute(() -> LOGGER.info("{} picked {} scoring {} at depth {} after {} nodes in {}ms ({} nodes/s)",
+				name(), picked, result.score, result.depth, result.nodes.get(), elapsed / 1_000_000,
+				Math.round(rate)));
+		return best;
+	}
+
+	// Moves the detective closest to the stations Mr X could be at. When the log rules out every
+	// start in MRX_LOCATIONS, Mr X is taken to have started at any station free now
+	private Move chase(Board board, ImmutableSet<Move> moves) {
+		if (candidates == null) candidates = MrXCandidates.of(board.getSetup());
+		candidates.update(board);
+		CompiledGraph graph = CompiledGraph.of(board.getSetup());
+		DistanceTable distances = DistanceTable.detective(graph);
+		MrXCandidates fits = candidates;
+		if (fits.isEmpty()) {
+			fits = new MrXCandidates(graph, Ints.asList(UnoccupiedStations.of(board)));
+			fits.update(board);
+			if (fits.isEmpty()) return moves.iterator().next();
+		}
+		long[] stations = new long[graph.words()];
+		for (int i = 0; i < stations.length; i++) stations[i] = fits.word(i);
+		Move best = moves.iterator().next();
+		int bestDistance = Integer.MAX_VALUE;
+		for (Move move : moves) {
+			int distance = distances.nearest(graph.indexOf(PackedMove.destination(PackedMove.pack(move))), stations);
+			if (distance < bestDistance) {
+				best = move;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the nodes searched per second in the last search, 0 before the first
+	 */
+	public double nodesPerSecond() { return nodesPerSecond; }
+	/**
+	 * @return the depth of the deepest finished iteration of the last search, in plies
+	 */
+	public int depth() { return depth; }
+
+	/**
+	 * @return the table shared by every search thread, kept between moves
+	 */
+	TranspositionTable table() { return table; }
+
+	@Override public synchronized void onTerminate() {
+		if (executor != null) executor.shutdownNow();
+		executor = null;
+		onStart();
+	}
+
+	// The best move of the deepest finished iteration of any thread
+	private static final class Result {
+		final long deadline;
+		final AtomicLong nodes = new AtomicLong();
+		volatile boolean stop;
+		long move;
+		int score;
+		int depth;
+
+		Result(long deadline) { this.deadline = deadline; }
+
+		synchronized void report(int depth, long move, int score) {
+			if (depth <= this.depth || move == 0) return;
+			this.depth = depth;
+			this.move = move;
+			this.score = score;
+		}
+	}
+
+	// Thrown to unwind a search when the time is up; the state is discarded so nothing is unmade
+	private static final class Timeout extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Timeout() { super(null, null, false, false); }
+	}
+
+	private static final Timeout TIMEOUT = new Timeout();
+
+	// One thread's search, with its own state and scratch space
+	private final class Searcher {
+		private final SearchState state;
+		private final int id;
+		private final Result result;
+		private final CompiledGraph graph;
+		private final DistanceTable distances;
+		private final long[] detectives;
+		private MoveList[] lists = new MoveList[0];
+		private int[][] keys = new int[0][];
+		private int ply;
+		private long nodes;
+		private long rootMove; // Best move of the last search from the root
+
+		Searcher(SearchState state, int id, Result result) {
+			this.state = state;
+			this.id = id;
+			this.result = result;
+			this.graph = state.graph();
+			this.distances = DistanceTable.detective(graph);
+			this.detectives = new long[graph.words()];
+		}
+
+		void run() {
+			int score = 0;
+			try {
+				// Helpers on odd ids start a ply deeper, so the threads do not all search the same depth
+				for (int depth = 1 + (id & 1); depth <= MAX_DEPTH; depth++) {
+					int alpha = -INFINITY, beta = INFINITY;
+					if (depth > 2) {
+						alpha = Math.max(score - WINDOW, -INFINITY);
+						beta = Math.min(score + WINDOW, INFINITY);
+					}
+					while (true) {
+						score = search(depth, alpha, beta);
+						if (score <= alpha && alpha > -INFINITY) alpha = -INFINITY;
+						else if (score >= beta && beta < INFINITY) beta = INFINITY;
+						else break;
+					}
+					result.report(depth, rootMove, score);
+					if (Math.abs(score) >= WIN) break;
+				}
+			} catch (Timeout e) {
+				// The deepest finished iteration has already been reported
+			} finally {
+				result.nodes.addAndGet(nodes);
+			}
+		}
+
+		private int search(int depth, int alpha, int beta) {
+			if ((++nodes & 1023) == 0 && (result.stop || Deadline.passed(result.deadline))) {
+				result.stop = true;
+				throw TIMEOUT;
+			}
+			ImmutableSet<Piece> winner = state.getWinner();
+			if (!winner.isEmpty()) return winner.contains(Piece.MrX.MRX) ? WIN : -WIN;
+			if (depth <= 0) return evaluate();
+
+			long key = state.getPositionKey();
+			long data = table.data(key);
+			long hashMove = 0;
+			if (data != 0) {
+				hashMove = table.move(key);
+				// The root is always searched, so every iteration finds its own root move
+				if (ply > 0 && TranspositionTable.depth(data) >= depth) {
+					int score = TranspositionTable.score(data);
+					int bound = TranspositionTable.bound(data);
+					if (bound == TranspositionTable.EXACT
+							|| (bound == TranspositionTable.LOWER && score >= beta)
+							|| (bound == TranspositionTable.UPPER && score <= alpha)) return score;
+				}
+			}
+
+			boolean mrX = state.isMrXTurn();
+			if (ply == lists.length) {
+				lists = Arrays.copyOf(lists, ply + 8);
+				keys = Arrays.copyOf(keys, ply + 8);
+			}
+			if (lists[ply] == null) lists[ply] = new MoveList();
+			MoveList moves = lists[ply];
+			state.generate(moves);
+			int size = mrX ? moves.size() : firstDetective(moves);
+			int[] order = order(moves, size, mrX, hashMove);
+
+			int best = mrX ? -INFINITY : INFINITY;
+			long bestMove = 0;
+			int a = alpha, b = beta;
+			for (int i = 0; i < size; i++) {
+				long move = moves.get(order[i]);
+				state.make(move);
+				// The detectives' moves in a round make up one ply
+				int childDepth = mrX || state.isMrXTurn() ? depth - 1 : depth;
+				ply++;
+				int score = search(childDepth, a, b);
+				ply--;
+				state.unmake();
+				if (mrX ? score > best : score < best) {
+					best = score;
+					bestMove = move;
+				}
+				if (mrX) a = Math.max(a, score);
+				else b = Math.min(b, score);
+				if (a >= b) break;
+			}
+			int bound = best <= alpha ? TranspositionTable.UPPER
+					: best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(key, depth, best, bound, bestMove);
+			if (ply == 0) rootMove = bestMove;
+			return best;
+		}
+
+		// The number of moves at the start of the list made by the first detective to move
+		private int firstDetective(MoveList moves) {
+			int piece = PackedMove.pieceIndex(moves.get(0));
+			int size = 1;
+			while (size < moves.size() && PackedMove.pieceIndex(moves.get(size)) == piece) size++;
+			return size;
+		}
+
+		// Indices of the first moves of the list, the hash move first, then the most promising
+		private int[] order(MoveList moves, int size, boolean mrX, long hashMove) {
+			if (keys[ply] == null || keys[ply].length < 2 * size) keys[ply] = new int[Math.max(2 * size, 64)];
+			int[] order = keys[ply];
+			locateDetectives();
+			int mrXLocation = graph.index(state.location(0));
+			for (int i = 0; i < size; i++) {
+				long move = moves.get(i);
+				int destination = graph.index(PackedMove.destination(move));
+				int score;
+				if (move == hashMove) score = Integer.MAX_VALUE;
+				else if (mrX) score = 16 * distances.nearest(destination, detectives) - (PackedMove.isDouble(move) ? 8 : 0);
+				else score = -distances.indexDistance(destination, mrXLocation);
+				// Helpers break ties differently at the root
+				if (ply == 0 && id != 0 && score != Integer.MAX_VALUE) score = 4 * score + (i + id) % 4;
+				order[i] = i;
+				order[size + i] = score;
+			}
+			for (int i = 1; i < size; i++) {
+				int index = order[i], score = order[size + i], j = i - 1;
+				while (j >= 0 && order[size + j] < score) {
+					order[j + 1] = order[j];
+					order[size + j + 1] = order[size + j];
+					j--;
+				}
+				order[j + 1] = index;
+				order[size + j + 1] = score;
+			}
+			return order;
+		}
+
+		private void locateDetectives() {
+			Arrays.fill(detectives, 0);
+			for (int slot = 1; slot < state.slots(); slot++) {
+				int index = graph.index(state.location(slot));
+				detectives[index >>> 6] |= 1L << index;
+			}
+		}
+
+		// Mr X's view of a position: far from the detectives with tickets to spare
+		private int evaluate() {
+			int mrX = graph.index(state.location(0));
+			int nearest = DistanceTable.UNREACHABLE, total = 0;
+			for (int slot = 1; slot < state.slots(); slot++) {
+				int distance = distances.indexDistance(graph.index(state.location(slot)), mrX);
+				nearest = Math.min(nearest, distance);
+				total += Math.min(distance, 6);
+			}
+			return 60 * Math.min(nearest, 5) + 10 * total
+					+ 15 * state.tickets(0, Ticket.DOUBLE) + 5 * state.tickets(0, Ticket.SECRET);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a search has to stop to get its move in on time, on the {@link System#nanoTime()} clock.
+ * <br>
+ * A tenth of the time, at least 50ms and at most half of it, is kept back for gathering results
+ * and handing the move over.
+ */
+final class Deadline {
+
+	private static final long RESERVE = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private Deadline() {}
+
+	/**
+	 * @param timeout the time given to pick a move, see {@link uk.ac.bris.cs.scotlandyard.model.Ai}
+	 * @return the {@link System#nanoTime()} to stop searching at
+	 */
+	static long of(Pair<Long, TimeUnit> timeout) {
+		Objects.requireNonNull(timeout, "Timeout must not be null");
+		long budget = timeout.right().toNanos(timeout.left());
+		if (budget <= 0) throw new IllegalArgumentException("Timeout must be positive: " + budget + "ns");
+		long reserve = Math.min(Math.max(budget / 10, RESERVE), budget / 2);
+		return System.nanoTime() + budget - reserve;
+	}
+
+	/**
+	 * @param deadline the {@link System#nanoTime()} to stop at
+	 * @return whether the deadline has passed
+	 */
+	static boolean passed(long deadline) { return System.nanoTime() - deadline >= 0; }
+}
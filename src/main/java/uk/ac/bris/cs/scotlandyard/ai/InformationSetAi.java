@@ -0,0 +1,193 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MrXCandidates;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Information set Monte Carlo tree search, made for the detectives who cannot see Mr X.
+ * <br>
+ * Rather than guessing where Mr X is once and searching as if they knew, every core repeatedly
+ * draws a determinization, Mr X placed uniformly at one of the {@link MrXCandidates} of the
+ * travel log, and runs a few simulations from it into one {@link InformationSetTree} shared by
+ * all of them. Statistics are kept by what the detectives can see, so they hold across every
+ * station Mr X could be at, and the move leading to the most visited information set is played.
+ * If no station fits the travel log, Mr X is placed at any station without a detective. The tree
+ * is kept between turns until it fills up.
+ * <br>
+ * As Mr X sees the whole board, his only determinization is where he is. The determinizations
+ * and simulations per second of the last search are logged and available from
+ * {@link #determinizationsPerSecond()} and {@link #simulationsPerSecond()}.
+ */
+public final class InformationSetAi implements Ai {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InformationSetAi.class);
+	private static final int SIMULATIONS_PER_DETERMINIZATION = 4;
+
+	private final int threads;
+	private final SplittableRandom random = new SplittableRandom();
+	private ExecutorService executor;
+	private final InformationSetTree[] trees = new InformationSetTree[2]; // Mr X's, then the detectives'
+	private MrXCandidates candidates;
+	private volatile double determinizationsPerSecond;
+	private volatile double simulationsPerSecond;
+
+	/**
+	 * Creates an Ai searching on every core
+	 */
+	public InformationSetAi() { this(Runtime.getRuntime().availableProcessors()); }
+
+	/**
+	 * @param threads the number of threads searching at once
+	 */
+	public InformationSetAi(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Threads must be positive: " + threads);
+		this.threads = threads;
+	}
+
+	@Nonnull @Override public String name() { return "ISMCTS"; }
+
+	@Override public synchronized void onStart() {
+		trees[0] = null;
+		trees[1] = null;
+		candidates = null;
+	}
+
+	@Nonnull @Override public synchronized Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		long start = System.nanoTime();
+		long deadline = Deadline.of(timeoutPair);
+		ImmutableSet<Move> moves = board.getAvailableMoves();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		Optional<Move> book = OpeningBook.standard().lookup(board);
+		if (book.isPresent()) return book.get();
+		if (moves.size() == 1) return moves.iterator().next();
+		Move any = moves.iterator().next();
+		boolean mrX = any.commencedBy().isMrX();
+		int[] stations;
+		if (mrX) stations = new int[]{any.source()};
+		else {
+			if (candidates == null) candidates = MrXCandidates.of(board.getSetup());
+			candidates.update(board);
+			stations = candidates.toArray();
+			if (stations.length == 0) stations = UnoccupiedStations.of(board);
+			if (stations.length == 0) return any;
+		}
+
+		InformationSetTree tree = trees[mrX ? 0 : 1];
+		if (tree == null) tree = trees[mrX ? 0 : 1] = new InformationSetTree(!mrX);
+		if (tree.size() >= InformationSetTree.MAX_NODES) tree.clear();
+
+		// Everything after the search runs past the deadline, so the information set each move
+		// leads to is found beforehand; it is the same from every determinization
+		SearchState state = SearchState.of(board, stations[0]);
+		Move[] children = moves.toArray(new Move[0]);
+		long[] keys = new long[children.length];
+		for (int i = 0; i < children.length; i++) {
+			state.make(children[i]);
+			keys[i] = tree.key(state);
+			state.unmake();
+		}
+
+		long[] counts = search(board, tree, stations, deadline);
+		Move best = any;
+		int bestVisits = -1;
+		for (int i = 0; i < children.length; i++) {
+			int visits = tree.visits(keys[i]);
+			if (visits > bestVisits) {
+				best = children[i];
+				bestVisits = visits;
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double determinizationRate = counts[0] / seconds, simulationRate = counts[1] / seconds;
+		determinizationsPerSecond = determinizationRate;
+		simulationsPerSecond = simulationRate;
+		// Logged from the pool once the move is handed back, as the first message sets up logging
+		Move picked = best;
+		int nodes = tree.size();
+		executor.execute(() -> LOGGER.info("{} picked {} after {} determinizations and {} simulations in {}ms "
+						+ "({} determinizations/s, {} simulations/s, {} nodes)",
+				name(), picked, counts[0], counts[1], Math.round(seconds * 1000),
+				Math.round(determinizationRate), Math.round(simulationRate), nodes));
+		return best;
+	}
+
+	// Searches from random determinizations on every thread until the deadline, returning the
+	// number of determinizations and simulations
+	private long[] search(Board board, InformationSetTree tree, int[] stations, long deadline) {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+					.setNameFormat("information-set-%d").setDaemon(true).build());
+		}
+		List<Future<long[]>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			SplittableRandom random = this.random.split();
+			futures.add(executor.submit(() -> {
+				InformationSetTree.Searcher searcher = tree.new Searcher(random);
+				Map<Integer, SearchState> states = new HashMap<>();
+				long determinizations = 0;
+				do {
+					int station = stations[random.nextInt(stations.length)];
+					SearchState state = states.computeIfAbsent(station, location -> SearchState.of(board, location));
+					for (int j = 0; j < SIMULATIONS_PER_DETERMINIZATION; j++) searcher.simulate(state);
+					determinizations++;
+				} while (!Deadline.passed(deadline));
+				return new long[]{determinizations, searcher.simulations()};
+			}));
+		}
+		long[] counts = new long[2];
+		try {
+			for (Future<long[]> future : futures) {
+				long[] count = future.get();
+				counts[0] += count[0];
+				counts[1] += count[1];
+			}
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search failed", e.getCause());
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the determinizations searched per second in the last search, 0 before the first
+	 */
+	public double determinizationsPerSecond() { return determinizationsPerSecond; }
+	/**
+	 * @return the simulations per second of the last search, 0 before the first
+	 */
+	public double simulationsPerSecond() { return simulationsPerSecond; }
+
+	@Override public synchronized void onTerminate() {
+		if (executor != null) executor.shutdownNow();
+		executor = null;
+		onStart();
+	}
+}
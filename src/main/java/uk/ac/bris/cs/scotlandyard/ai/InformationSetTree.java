@@ -0,0 +1,191 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+import uk.ac.bris.cs.scotlandyard.model.MoveList;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.PlayoutEngine;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Monte Carlo statistics over information sets, shared by every thread searching for one side.
+ * <br>
+ * A node is what one side can see of a position. For the detectives that is the board without Mr
+ * X's location, keyed by {@link SearchState#getZobristKey()}; Mr X sees everything, so his nodes
+ * are keyed by {@link SearchState#getPositionKey()}. A {@link Searcher} walks down from a
+ * determinization, a state with Mr X placed at one of the stations he could be at, choosing
+ * among the moves available in it. Moves that lead to the same information set share a node, so
+ * Mr X's hidden moves using the same ticket are a single choice to the detectives. Which moves
+ * are available depends on the determinization, so a node's exploration term counts the times
+ * it was available to choose rather than the visits of its parent.
+ * <br>
+ * Nodes are kept in a concurrent map and updated under their own lock, so every searcher learns
+ * from the others as it goes. Each simulation adds at most one node, up to {@link #MAX_NODES}.
+ */
+final class InformationSetTree {
+
+	static final int MAX_NODES = 1 << 20;
+	private static final double EXPLORATION = 0.7;
+
+	static final class Node {
+		private int visits;
+		private int availability; // Times the node could have been chosen
+		private double mrXWins;
+
+		synchronized void addAvailability() { availability++; }
+
+		synchronized void update(double reward) {
+			visits++;
+			mrXWins += reward;
+		}
+
+		synchronized int visits() { return visits; }
+
+		// The UCB score of the node to the player choosing it
+		synchronized double score(boolean byMrX) {
+			if (visits == 0) return Double.POSITIVE_INFINITY;
+			double value = byMrX ? mrXWins / visits : 1 - mrXWins / visits;
+			return value + EXPLORATION * Math.sqrt(Math.log(availability) / visits);
+		}
+	}
+
+	private final boolean hidden;
+	private final ConcurrentHashMap<Long, Node> nodes = new ConcurrentHashMap<>();
+
+	/**
+	 * @param hidden whether Mr X's location is hidden, as when searching for the detectives
+	 */
+	InformationSetTree(boolean hidden) { this.hidden = hidden; }
+
+	/**
+	 * @param state the state
+	 * @return the key of the information set of the state
+	 */
+	long key(SearchState state) { return hidden ? state.getZobristKey() : state.getPositionKey(); }
+
+	/**
+	 * @param key the information set key
+	 * @return the visits of the node, 0 if there is none
+	 */
+	int visits(long key) {
+		Node node = nodes.get(key);
+		return node == null ? 0 : node.visits();
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	int size() { return nodes.size(); }
+
+	/**
+	 * Removes every node
+	 */
+	void clear() { nodes.clear(); }
+
+	/**
+	 * One thread's simulations into the shared tree
+	 */
+	final class Searcher {
+		private final SplittableRandom random;
+		private final PlayoutEngine engine;
+		private final MoveList moves = new MoveList();
+		private long[] keys = new long[64]; // Information set after each move
+		private long[] sorted = new long[64];
+		private long[] unexplored = new long[64];
+		private Node[] path = new Node[64];
+		private long simulations;
+
+		Searcher(SplittableRandom random) {
+			this.random = random;
+			this.engine = new PlayoutEngine(random.split());
+		}
+
+		/**
+		 * Runs one simulation from a determinization, leaving it as it was
+		 *
+		 * @param state the determinization
+		 */
+		void simulate(SearchState state) {
+			int length = 0;
+			boolean expanded = false;
+			while (!expanded && !state.isGameOver()) {
+				boolean mrX = state.isMrXTurn();
+				int size = listChildren(state);
+				Node best = null;
+				long bestKey = 0;
+				double bestScore = Double.NEGATIVE_INFINITY;
+				int unexploredSize = 0;
+				for (int i = 0; i < size; i++) {
+					if (i > 0 && sorted[i] == sorted[i - 1]) continue;
+					Node child = nodes.get(sorted[i]);
+					if (child == null) {
+						unexplored[unexploredSize++] = sorted[i];
+						continue;
+					}
+					child.addAvailability();
+					double score = child.score(mrX);
+					if (score > bestScore) {
+						best = child;
+						bestKey = sorted[i];
+						bestScore = score;
+					}
+				}
+				if (unexploredSize > 0 && nodes.size() < MAX_NODES) {
+					bestKey = unexplored[random.nextInt(unexploredSize)];
+					best = nodes.computeIfAbsent(bestKey, key -> new Node());
+					best.addAvailability();
+					expanded = true;
+				} else if (best == null) break;
+				state.make(pickMove(size, bestKey));
+				if (length == path.length) path = Arrays.copyOf(path, length * 2);
+				path[length++] = best;
+			}
+			double reward = (state.isGameOver() ? state.getWinner().contains(Piece.MrX.MRX) : engine.play(state))
+					? 1 : 0;
+			for (int i = length - 1; i >= 0; i--) {
+				path[i].update(reward);
+				state.unmake();
+			}
+			simulations++;
+		}
+
+		// Lists the moves and the information set each leads to, with the sets sorted in sorted
+		private int listChildren(SearchState state) {
+			state.generate(moves);
+			int size = moves.size();
+			if (size > keys.length) {
+				keys = new long[size];
+				sorted = new long[size];
+				unexplored = new long[size];
+			}
+			for (int i = 0; i < size; i++) {
+				state.make(moves.get(i));
+				keys[i] = key(state);
+				state.unmake();
+			}
+			System.arraycopy(keys, 0, sorted, 0, size);
+			Arrays.sort(sorted, 0, size);
+			return size;
+		}
+
+		// Picks one of the moves leading to an information set at random
+		private long pickMove(int size, long key) {
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (keys[i] == key) count++;
+			}
+			int pick = random.nextInt(count);
+			for (int i = 0; i < size; i++) {
+				if (keys[i] == key && pick-- == 0) return moves.get(i);
+			}
+			throw new AssertionError("No move leads to " + key);
+		}
+
+		/**
+		 * @return the simulations run by this searcher
+		 */
+		long simulations() { return simulations; }
+	}
+}
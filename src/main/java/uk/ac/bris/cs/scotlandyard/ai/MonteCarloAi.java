@@ -0,0 +1,189 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MrXDistribution;
+import uk.ac.bris.cs.scotlandyard.model.MrXMovementModel;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Monte Carlo tree search for either side, using every core until the time is nearly up.
+ * <br>
+ * The search is root parallel: each core grows its own {@link MonteCarloTree} from the board and
+ * the move visited most across all trees is played. Trees share nothing while searching, so no
+ * locks or virtual losses are needed. Each tree keeps the part of itself that is still reachable
+ * for the next turn, found by the position key of the new board.
+ * <br>
+ * Detectives cannot see Mr X, so each tree places him at a station drawn from a
+ * {@link MrXDistribution} of the travel log, and keeps that station while the log does not
+ * change and it is still possible. If no station fits the log, he is placed at any station
+ * without a detective. The number of simulations per second of the last search is logged and
+ * available from {@link #simulationsPerSecond()}.
+ */
+public final class MonteCarloAi implements Ai {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MonteCarloAi.class);
+
+	private final int threads;
+	private final SplittableRandom random = new SplittableRandom();
+	private ExecutorService executor;
+	private final Worker[][] workers = new Worker[2][]; // Mr X's, then the detectives'
+	private MrXDistribution distribution;
+	private volatile double simulationsPerSecond;
+
+	// A tree and the station it places Mr X at
+	private static final class Worker {
+		final MonteCarloTree tree;
+		int mrXLocation = -1;
+		int logSize = -1;
+
+		Worker(SplittableRandom random) { this.tree = new MonteCarloTree(random); }
+	}
+
+	/**
+	 * Creates an Ai searching on every core
+	 */
+	public MonteCarloAi() { this(Runtime.getRuntime().availableProcessors()); }
+
+	/**
+	 * @param threads the number of trees searched at once
+	 */
+	public MonteCarloAi(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Threads must be positive: " + threads);
+		this.threads = threads;
+	}
+
+	@Nonnull @Override public String name() { return "Monte Carlo"; }
+
+	@Override public synchronized void onStart() {
+		workers[0] = null;
+		workers[1] = null;
+		distribution = null;
+	}
+
+	@Nonnull @Override public synchronized Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		long start = System.nanoTime();
+		long deadline = Deadline.of(timeoutPair);
+		ImmutableSet<Move> moves = board.getAvailableMoves();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		Optional<Move> book = OpeningBook.standard().lookup(board);
+		if (book.isPresent()) return book.get();
+		if (moves.size() == 1) return moves.iterator().next();
+		Move any = moves.iterator().next();
+		boolean mrX = any.commencedBy().isMrX();
+		if (!mrX) {
+			if (distribution == null)
+				distribution = MrXDistribution.of(board.getSetup(), MrXMovementModel.uniform());
+			distribution.update(board);
+		}
+
+		Worker[] side = workers[mrX ? 0 : 1];
+		if (side == null) {
+			side = workers[mrX ? 0 : 1] = new Worker[threads];
+			for (int i = 0; i < threads; i++) side[i] = new Worker(random.split());
+		}
+		int logSize = board.getMrXTravelLog().size();
+		int[] unoccupied = mrX || !distribution.isEmpty() ? null : UnoccupiedStations.of(board);
+		if (unoccupied != null && unoccupied.length == 0) return any;
+		for (Worker worker : side) {
+			int location;
+			if (mrX) location = any.source();
+			else if (unoccupied != null) location = unoccupied[random.nextInt(unoccupied.length)];
+			else if (worker.logSize == logSize && distribution.probability(worker.mrXLocation) > 0)
+				location = worker.mrXLocation;
+			else location = distribution.sample(random);
+			worker.mrXLocation = location;
+			worker.logSize = logSize;
+			worker.tree.reroot(SearchState.of(board, location));
+		}
+
+		// Everything after the search runs past the deadline, so the moves are packed beforehand
+		Move[] candidates = moves.toArray(new Move[0]);
+		long[] packed = new long[candidates.length];
+		for (int i = 0; i < packed.length; i++) packed[i] = PackedMove.pack(candidates[i]);
+
+		long simulations = search(side, deadline);
+		Map<Long, Integer> visits = new HashMap<>();
+		for (Worker worker : side) worker.tree.addRootVisits(visits);
+		Move best = any;
+		int bestVisits = -1;
+		for (int i = 0; i < packed.length; i++) {
+			int count = visits.getOrDefault(packed[i], 0);
+			if (count > bestVisits) {
+				best = candidates[i];
+				bestVisits = count;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		double rate = simulations / (elapsed / 1e9);
+		simulationsPerSecond = rate;
+		// Logged from the pool once the move is handed back, as the first message sets up logging
+		Move picked = best;
+		executor.execute(() -> LOGGER.info("{} picked {} after {} simulations in {}ms ({} simulations/s)",
+				name(), picked, simulations, elapsed / 1_000_000, Math.round(rate)));
+		return best;
+	}
+
+	// Runs every worker until the deadline, returning the number of simulations
+	private long search(Worker[] side, long deadline) {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+					.setNameFormat("monte-carlo-%d").setDaemon(true).build());
+		}
+		List<Future<Long>> futures = new ArrayList<>();
+		for (Worker worker : side) {
+			futures.add(executor.submit(() -> {
+				long before = worker.tree.simulations();
+				do worker.tree.simulate();
+				while (!Deadline.passed(deadline));
+				return worker.tree.simulations() - before;
+			}));
+		}
+		long simulations = 0;
+		try {
+			for (Future<Long> future : futures) simulations += future.get();
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search failed", e.getCause());
+		}
+		return simulations;
+	}
+
+	/**
+	 * @return the simulations per second of the last search, 0 before the first
+	 */
+	public double simulationsPerSecond() { return simulationsPerSecond; }
+
+	@Override public synchronized void onTerminate() {
+		if (executor != null) executor.shutdownNow();
+		executor = null;
+		onStart();
+	}
+}
@@ -0,0 +1,183 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.MoveList;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.PlayoutEngine;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * A Monte Carlo search tree over a {@link SearchState}, searched by one thread.
+ * <br>
+ * Each simulation walks down the tree by UCT, makes the moves on the state, expands the node it
+ * stops at once it has been visited before, finishes the game with a {@link PlayoutEngine} and
+ * takes the moves back. Wins are counted for Mr X and read from the point of view of whoever made
+ * the move into a node.
+ * <br>
+ * Nodes remember the position key reached, so {@link #reroot(SearchState)} can keep the subtree
+ * of a later state that was already searched, such as the state after our move and the other
+ * side's replies.
+ */
+final class MonteCarloTree {
+
+	static final int MAX_NODES = 1 << 18;
+	static final int REUSE_DEPTH = 8; // Enough for a double move and every detective's reply
+	private static final double EXPLORATION = 0.7;
+	private static final int MRX = 0; // Index of Mr X in ScotlandYard.ALL_PIECES
+
+	static final class Node {
+		final long move; // Packed move into the node, 0 for a new root
+		final boolean byMrX;
+		long key; // Position key after the move, 0 until first visited
+		Node[] children; // Null until expanded
+		int visits;
+		double mrXWins;
+
+		Node(long move) {
+			this.move = move;
+			this.byMrX = move != 0 && PackedMove.pieceIndex(move) == MRX;
+		}
+
+		// The value of the node to the player who moved into it
+		double value() { return byMrX ? mrXWins / visits : 1 - mrXWins / visits; }
+	}
+
+	private final PlayoutEngine engine;
+	private final MoveList moves = new MoveList();
+	private Node[] path = new Node[64];
+	private SearchState state;
+	private Node root;
+	private int nodes;
+	private long simulations;
+
+	MonteCarloTree(SplittableRandom random) { this.engine = new PlayoutEngine(random); }
+
+	/**
+	 * Searches from a new state, keeping the subtree already searched for it if it is within
+	 * {@link #REUSE_DEPTH} moves of the current root
+	 *
+	 * @param state the state to search from, owned by the tree from now on
+	 * @return whether a subtree was kept
+	 */
+	boolean reroot(SearchState state) {
+		long key = state.getPositionKey();
+		Node found = root == null ? null : find(key);
+		this.state = state;
+		if (found == null) {
+			root = new Node(0);
+			root.key = key;
+			nodes = 1;
+			return false;
+		}
+		root = found;
+		nodes = count(found);
+		return true;
+	}
+
+	private Node find(long key) {
+		ArrayDeque<Node> queue = new ArrayDeque<>();
+		ArrayDeque<Integer> depths = new ArrayDeque<>();
+		queue.add(root);
+		depths.add(0);
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			int depth = depths.poll();
+			if (node.key == key) return node;
+			if (node.children == null || depth == REUSE_DEPTH) continue;
+			for (Node child : node.children) {
+				if (child.visits == 0) continue;
+				queue.add(child);
+				depths.add(depth + 1);
+			}
+		}
+		return null;
+	}
+
+	private static int count(Node node) {
+		int count = 1;
+		if (node.children != null) for (Node child : node.children) count += count(child);
+		return count;
+	}
+
+	/**
+	 * Runs one simulation from the root
+	 */
+	void simulate() {
+		int length = 0;
+		Node node = root;
+		while (!state.isGameOver()) {
+			if (node.children == null) {
+				if ((node.visits == 0 && node != root) || nodes >= MAX_NODES) break;
+				expand(node);
+			}
+			node = select(node);
+			state.make(node.move);
+			if (node.key == 0) node.key = state.getPositionKey();
+			if (length == path.length) path = Arrays.copyOf(path, length * 2);
+			path[length++] = node;
+		}
+		boolean mrXWins = state.isGameOver() ? state.getWinner().contains(Piece.MrX.MRX) : engine.play(state);
+		double reward = mrXWins ? 1 : 0;
+		root.visits++;
+		root.mrXWins += reward;
+		for (int i = 0; i < length; i++) {
+			path[i].visits++;
+			path[i].mrXWins += reward;
+			state.unmake();
+		}
+		simulations++;
+	}
+
+	private void expand(Node node) {
+		state.generate(moves);
+		Node[] children = new Node[moves.size()];
+		for (int i = 0; i < children.length; i++) children[i] = new Node(moves.get(i));
+		node.children = children;
+		nodes += children.length;
+	}
+
+	private static Node select(Node node) {
+		double exploration = EXPLORATION * Math.sqrt(Math.log(node.visits + 1));
+		Node best = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (Node child : node.children) {
+			if (child.visits == 0) return child;
+			double score = child.value() + exploration / Math.sqrt(child.visits);
+			if (score > bestScore) {
+				bestScore = score;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Adds the visits of each move from the root to a map of visits by packed move
+	 *
+	 * @param visits the visits so far
+	 */
+	void addRootVisits(Map<Long, Integer> visits) {
+		if (root.children == null) return;
+		for (Node child : root.children) {
+			if (child.visits > 0) visits.merge(child.move, child.visits, Integer::sum);
+		}
+	}
+
+	/**
+	 * @return the visits of the root, including those kept from earlier searches
+	 */
+	int rootVisits() { return root.visits; }
+	/**
+	 * @return the simulations run by this tree
+	 */
+	long simulations() { return simulations; }
+	/**
+	 * @return the number of nodes under the root
+	 */
+	int nodes() { return nodes; }
+}
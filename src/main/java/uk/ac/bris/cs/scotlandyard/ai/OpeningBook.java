@@ -0,0 +1,171 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MovePool;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Zobrist;
+
+/**
+ * Moves for the first rounds of a game, searched ahead of time by {@link OpeningBookBuilder} so
+ * an Ai can play them straight away instead of searching.
+ * <br>
+ * Positions are keyed by what the player to move can see: the board's
+ * {@link Board#getZobristKey()} for detectives, with Mr X's location added for Mr X. The file is
+ * memory mapped and holds the sorted keys followed by the {@link uk.ac.bris.cs.scotlandyard.model.PackedMove
+ * packed} move for each, so a lookup is a binary search over the mapped keys:
+ * <pre>
+ * int  magic, version, entries, longest travel log of a position
+ * byte[64] {@link CompiledGraph#fingerprint()} of the graph searched on
+ * long[entries] keys, ascending
+ * long[entries] moves
+ * </pre>
+ * Boards on another graph, with a longer travel log or whose book move is not available are not
+ * looked up. The book Ais use is the file named by the {@value #BOOK_PROPERTY} system property,
+ * which is empty if the property is not set.
+ */
+public final class OpeningBook {
+
+	/**
+	 * The system property naming the book file used by {@link #standard()}
+	 */
+	public static final String BOOK_PROPERTY = "scotlandyard.book";
+
+	static final int MAGIC = 0x5359424B, VERSION = 1; // "SYBK"
+	static final int HEADER = 16 + 64;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OpeningBook.class);
+	private static final OpeningBook EMPTY = new OpeningBook("", 0, LongBuffer.allocate(0), LongBuffer.allocate(0));
+	private static volatile OpeningBook standard;
+
+	private final String fingerprint;
+	private final int maxLogSize;
+	private final LongBuffer keys;
+	private final LongBuffer moves;
+	private volatile CompiledGraph matched; // Last graph found to match the fingerprint
+
+	private OpeningBook(String fingerprint, int maxLogSize, LongBuffer keys, LongBuffer moves) {
+		this.fingerprint = fingerprint;
+		this.maxLogSize = maxLogSize;
+		this.keys = keys;
+		this.moves = moves;
+	}
+
+	/**
+	 * @return the book named by {@value #BOOK_PROPERTY}, loaded once; empty if the property is not
+	 * set or the file cannot be read
+	 */
+	@Nonnull public static OpeningBook standard() {
+		OpeningBook book = standard;
+		if (book == null) {
+			synchronized (OpeningBook.class) {
+				book = standard;
+				if (book == null) {
+					String file = System.getProperty(BOOK_PROPERTY);
+					book = EMPTY;
+					if (file != null) {
+						try {
+							book = load(Paths.get(file));
+						} catch (IOException e) {
+							LOGGER.warn("Unable to read opening book {}", file, e);
+						}
+					}
+					standard = book;
+				}
+			}
+		}
+		return book;
+	}
+
+	/**
+	 * @param file the book file, written by {@link OpeningBookBuilder#write(Path)}
+	 * @return the book, mapped into memory
+	 * @throws IOException if the file cannot be read or is not a book
+	 */
+	@Nonnull public static OpeningBook load(@Nonnull Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// The mapping stays valid once the channel is closed
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException(file + " is not an opening book");
+			int entries = buffer.getInt();
+			int maxLogSize = buffer.getInt();
+			byte[] fingerprint = new byte[64];
+			buffer.get(fingerprint);
+			if (entries < 0 || buffer.remaining() != entries * 16L)
+				throw new IOException(file + " is truncated");
+			LongBuffer longs = buffer.slice().asLongBuffer();
+			return new OpeningBook(new String(fingerprint, StandardCharsets.US_ASCII), maxLogSize,
+					longs.slice(0, entries), longs.slice(entries, entries));
+		}
+	}
+
+	/**
+	 * @param board the board
+	 * @return the book move for the player to move on the board, if the book has one
+	 */
+	@Nonnull public Optional<Move> lookup(@Nonnull Board board) {
+		if (keys.capacity() == 0 || board.getMrXTravelLog().size() > maxLogSize) return Optional.empty();
+		CompiledGraph graph = CompiledGraph.of(board.getSetup());
+		if (graph != matched) {
+			if (!graph.fingerprint().equals(fingerprint)) return Optional.empty();
+			matched = graph;
+		}
+		ImmutableSet<Move> available = board.getAvailableMoves();
+		if (available.isEmpty()) return Optional.empty();
+		int index = find(key(board, available.iterator().next()));
+		if (index < 0) return Optional.empty();
+		Move move = MovePool.of(graph).get(moves.get(index));
+		return available.contains(move) ? Optional.of(move) : Optional.empty();
+	}
+
+	/**
+	 * @param board the board
+	 * @param any any available move on the board
+	 * @return the book key of the board to the player to move
+	 */
+	static long key(Board board, Move any) {
+		long key = board.getZobristKey();
+		return any.commencedBy().isMrX() ? key ^ Zobrist.location(Piece.MrX.MRX, any.source()) : key;
+	}
+
+	// Binary search over the mapped keys, the index of the key or -1
+	private int find(long key) {
+		int low = 0, high = keys.capacity() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long value = keys.get(middle);
+			if (value < key) low = middle + 1;
+			else if (value > key) high = middle - 1;
+			else return middle;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of positions in the book
+	 */
+	public int size() { return keys.capacity(); }
+	/**
+	 * @return the longest travel log of a position in the book
+	 */
+	public int maxLogSize() { return maxLogSize; }
+}
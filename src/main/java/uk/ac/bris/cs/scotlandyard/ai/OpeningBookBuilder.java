@@ -0,0 +1,187 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * Builds an {@link OpeningBook} offline by playing the first rounds of games from start
+ * configurations with a long search for every move.
+ * <br>
+ * Each configuration is played by one Ai for Mr X and one for the detectives, both searching on
+ * every core, and the move picked for each position is added to the book. Positions reached from
+ * more than one configuration are only searched once. Run {@link #main(String[])} with
+ * <pre>
+ * file [configurations] [detectives] [rounds] [seconds per move]
+ * </pre>
+ * to write a book for the standard game from the configurations of seeds 0 onwards given by
+ * {@link ScotlandYard#generateMrXLocation(int)} and
+ * {@link ScotlandYard#generateDetectiveLocations(int, int)}, by default 16 configurations of 5
+ * detectives for 2 rounds with 10 seconds a move. Set {@value OpeningBook#BOOK_PROPERTY} to the
+ * file for the Ais to use it.
+ */
+public final class OpeningBookBuilder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OpeningBookBuilder.class);
+
+	private final GameSetup setup;
+	private final int rounds;
+	private final Pair<Long, TimeUnit> timeout;
+	private final Ai mrX;
+	private final Ai detectives;
+	private final Map<Long, Long> entries = new HashMap<>(); // Book key to packed move
+	private int maxLogSize;
+
+	/**
+	 * @param setup the game setup
+	 * @param rounds the number of Mr X moves to play from each configuration, each followed by
+	 * the detectives' replies
+	 * @param timeout the time to search each move for
+	 * @param mrX the Ai picking Mr X's moves
+	 * @param detectives the Ai picking the detectives' moves
+	 */
+	public OpeningBookBuilder(@Nonnull GameSetup setup,
+	                          int rounds,
+	                          @Nonnull Pair<Long, TimeUnit> timeout,
+	                          @Nonnull Ai mrX,
+	                          @Nonnull Ai detectives) {
+		if (rounds < 1) throw new IllegalArgumentException("Rounds must be positive: " + rounds);
+		this.setup = Objects.requireNonNull(setup);
+		this.rounds = rounds;
+		this.timeout = Objects.requireNonNull(timeout);
+		this.mrX = Objects.requireNonNull(mrX);
+		this.detectives = Objects.requireNonNull(detectives);
+	}
+
+	/**
+	 * Plays the opening from a start configuration, adding the move picked for each position
+	 *
+	 * @param mrX Mr X
+	 * @param detectives the detectives
+	 */
+	public void add(@Nonnull Player mrX, @Nonnull ImmutableList<Player> detectives) {
+		GameState state = new MyGameStateFactory().build(setup, mrX, detectives);
+		this.mrX.onStart();
+		this.detectives.onStart();
+		int mrXMoves = 0;
+		while (state.getWinner().isEmpty()) {
+			Move any = state.getAvailableMoves().iterator().next();
+			boolean mrXToMove = any.commencedBy().isMrX();
+			if (mrXToMove && mrXMoves == rounds) break;
+			long key = OpeningBook.key(state, any);
+			Long packed = entries.get(key);
+			Move move;
+			if (packed != null) move = PackedMove.unpack(packed);
+			else {
+				move = (mrXToMove ? this.mrX : this.detectives).pickMove(state, timeout);
+				entries.put(key, PackedMove.pack(move));
+				maxLogSize = Math.max(maxLogSize, state.getMrXTravelLog().size());
+			}
+			if (mrXToMove) mrXMoves++;
+			state = state.advance(move);
+		}
+	}
+
+	/**
+	 * Plays the opening from the start configuration of a seed with the default tickets
+	 *
+	 * @param seed the seed, see {@link ScotlandYard#generateMrXLocation(int)}
+	 * @param detectives the number of detectives
+	 */
+	public void addStandard(int seed, int detectives) {
+		ImmutableList<Integer> locations = ScotlandYard.generateDetectiveLocations(seed, detectives);
+		ImmutableList.Builder<Player> players = ImmutableList.builder();
+		for (int i = 0; i < locations.size(); i++) {
+			players.add(new Player(ALL_PIECES.get(i + 1), ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		}
+		add(new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(seed)), players.build());
+	}
+
+	/**
+	 * @return the number of positions added so far
+	 */
+	public int size() { return entries.size(); }
+
+	/**
+	 * Writes the book, replacing the file if it exists
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(@Nonnull Path file) throws IOException {
+		long[] keys = entries.keySet().stream().mapToLong(Long::longValue).toArray();
+		Arrays.sort(keys);
+		byte[] fingerprint = CompiledGraph.of(setup).fingerprint().getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER + keys.length * 16);
+		buffer.putInt(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putInt(keys.length).putInt(maxLogSize);
+		buffer.put(Arrays.copyOf(fingerprint, 64));
+		for (long key : keys) buffer.putLong(key);
+		for (long key : keys) buffer.putLong(entries.get(key));
+		// Written next to the file and moved into place, so readers never map half a book
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, "book", ".tmp");
+		Files.write(temporary, buffer.array());
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 5) {
+			System.err.println("Usage: OpeningBookBuilder file [configurations] [detectives] [rounds] [seconds]");
+			System.exit(1);
+		}
+		Path file = Paths.get(args[0]);
+		int configurations = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		int detectives = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+		long seconds = args.length > 4 ? Long.parseLong(args[4]) : 10;
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		AlphaBetaAi mrX = new AlphaBetaAi();
+		InformationSetAi detectiveAi = new InformationSetAi();
+		try {
+			OpeningBookBuilder builder = new OpeningBookBuilder(setup, rounds,
+					new Pair<>(seconds, TimeUnit.SECONDS), mrX, detectiveAi);
+			for (int seed = 0; seed < configurations; seed++) {
+				builder.addStandard(seed, detectives);
+				LOGGER.info("Configuration {} of {}, {} positions", seed + 1, configurations, builder.size());
+			}
+			builder.write(file);
+			LOGGER.info("Wrote {} positions to {}", builder.size(), file);
+		} finally {
+			mrX.onTerminate();
+			detectiveAi.onTerminate();
+		}
+	}
+}
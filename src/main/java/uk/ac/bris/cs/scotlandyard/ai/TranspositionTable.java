@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+/**
+ * A fixed size table of search results by position key, shared by every search thread without
+ * locking.
+ * <br>
+ * Each entry is three {@code long}s: the key xor the other two, the packed data and the best
+ * move. Threads read and write entries with plain accesses, so an entry can be torn by a
+ * concurrent write; a torn entry fails the key check and reads as a miss, which is the usual
+ * lockless hashing trick. Data is packed as:
+ * <pre>
+ *  0 - 31 score
+ * 32 - 39 depth searched
+ * 40 - 41 bound, one of {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+ * 42 - 49 generation of the search that stored it
+ * </pre>
+ * An entry is replaced by a result of a newer search or one searched at least as deep.
+ */
+final class TranspositionTable {
+
+	static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+	private final long[] entries;
+	private final int mask;
+	private volatile int generation;
+
+	/**
+	 * @param bits the log base 2 of the number of entries
+	 */
+	TranspositionTable(int bits) {
+		if (bits < 1 || bits > 26) throw new IllegalArgumentException("Bits out of range: " + bits);
+		this.entries = new long[3 << bits];
+		this.mask = (1 << bits) - 1;
+	}
+
+	/**
+	 * Starts a new search, whose results replace those of earlier ones
+	 */
+	void nextGeneration() { generation = (generation + 1) & 0xFF; }
+
+	/**
+	 * @param key the position key
+	 * @return the packed data stored for the key, or 0 if there is none
+	 */
+	long data(long key) {
+		int i = index(key);
+		long data = entries[i + 1], move = entries[i + 2];
+		return (entries[i] ^ data ^ move) == key ? data : 0;
+	}
+
+	/**
+	 * @param key the position key
+	 * @return the best move stored for the key, or 0 if there is none
+	 */
+	long move(long key) {
+		int i = index(key);
+		long data = entries[i + 1], move = entries[i + 2];
+		return (entries[i] ^ data ^ move) == key ? move : 0;
+	}
+
+	/**
+	 * @param key the position key
+	 * @param depth the depth searched
+	 * @param score the score found
+	 * @param bound how the score bounds the true score
+	 * @param move the best move found, 0 for none
+	 */
+	void store(long key, int depth, int score, int bound, long move) {
+		int i = index(key);
+		long old = entries[i + 1];
+		if (old != 0 && generation(old) == generation && depth(old) > depth) return;
+		long data = (score & 0xFFFFFFFFL) | (long) Math.min(depth, 0xFF) << 32 | (long) bound << 40
+				| (long) generation << 42 | 1L << 63;
+		entries[i] = key ^ data ^ move;
+		entries[i + 1] = data;
+		entries[i + 2] = move;
+	}
+
+	private int index(long key) { return 3 * (int) (key & mask); }
+
+	static int score(long data) { return (int) data; }
+	static int depth(long data) { return (int) (data >>> 32) & 0xFF; }
+	static int bound(long data) { return (int) (data >>> 40) & 3; }
+	private static int generation(long data) { return (int) (data >>> 42) & 0xFF; }
+}
@@ -0,0 +1,38 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+
+/**
+ * Where to place Mr X when no station fits the travel log.
+ * <br>
+ * The candidate stations assume Mr X started on one of
+ * {@link uk.ac.bris.cs.scotlandyard.model.ScotlandYard#MRX_LOCATIONS}, so a game set up otherwise
+ * can leave none. Searches then place him uniformly at any station no detective is on.
+ */
+final class UnoccupiedStations {
+
+	private UnoccupiedStations() {}
+
+	/**
+	 * @param board the board
+	 * @return the stations of the board's graph not occupied by a detective, ascending
+	 */
+	static int[] of(Board board) {
+		Objects.requireNonNull(board, "Board must not be null");
+		Set<Integer> occupied = new HashSet<>();
+		for (Piece piece : board.getPlayers()) {
+			if (piece.isDetective()) board.getDetectiveLocation((Detective) piece).ifPresent(occupied::add);
+		}
+		return board.getSetup().graph.nodes().stream()
+				.filter(station -> !occupied.contains(station))
+				.mapToInt(Integer::intValue)
+				.sorted()
+				.toArray();
+	}
+}
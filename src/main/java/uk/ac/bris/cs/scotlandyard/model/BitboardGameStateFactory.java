@@ -0,0 +1,387 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * A {@link GameState} factory that follows the same rules as {@link MyGameStateFactory} but keeps
+ * detective occupancy, Mr X's position and the players remaining to move as bitsets.
+ * <br>
+ * Stations are indexed by the shared {@link CompiledGraph} of the setup, occupancy is a {@code long[]} bitset over
+ * those indices and the remaining players are a bitmask over {@link ScotlandYard#ALL_PIECES}.
+ * Move generation therefore tests occupancy with bit operations instead of hashing boxed
+ * integers.
+ */
+public final class BitboardGameStateFactory implements Factory<GameState> {
+
+	@Nonnull @Override public GameState build(
+			GameSetup setup,
+			Player mrX,
+			ImmutableList<Player> detectives) {
+		if (setup.moves.isEmpty()) throw new IllegalArgumentException("Moves cannot be empty");
+		if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph cannot be empty");
+		if (mrX == null) throw new NullPointerException("Mr X cannot be null");
+		if (detectives.contains(null)) throw new NullPointerException("Detectives cannot contain null");
+		if (!mrX.isMrX()) throw new IllegalArgumentException("Mr X must be played by a Mr X piece");
+
+		CompiledGraph graph = CompiledGraph.of(setup);
+		int[] locations = new int[detectives.size()];
+		long[] occupancy = new long[graph.words()];
+		int pieces = 0, detectiveTickets = 0;
+		for (int i = 0; i < detectives.size(); i++) {
+			Player detective = detectives.get(i);
+			if (detective.isMrX())
+				throw new IllegalArgumentException("There must only be one Mr X");
+			if ((pieces & bit(detective.piece())) != 0)
+				throw new IllegalArgumentException("Detectives cannot have duplicate pieces");
+			if (detective.has(Ticket.SECRET))
+				throw new IllegalArgumentException("Detectives cannot have secret tickets");
+			if (detective.has(Ticket.DOUBLE))
+				throw new IllegalArgumentException("Detectives cannot have double tickets");
+			int index = graph.indexOf(detective.location());
+			if (get(occupancy, index))
+				throw new IllegalArgumentException("Multiple detectives cannot be at the same location");
+			pieces |= bit(detective.piece());
+			occupancy[index >>> 6] |= 1L << index;
+			locations[i] = index;
+			for (Ticket ticket : Ticket.values()) detectiveTickets += detective.count(ticket);
+		}
+		long[] mrXBoard = new long[graph.words()];
+		int mrXIndex = graph.indexOf(mrX.location());
+		mrXBoard[mrXIndex >>> 6] |= 1L << mrXIndex;
+
+		return new BitboardGameState(setup, graph,
+				bit(mrX.piece()), bit(mrX.piece()),
+				TravelLog.empty(), mrX, detectives.toArray(new Player[0]), locations,
+				occupancy, mrXBoard,
+				Zobrist.of(mrX, detectives, ImmutableSet.of(mrX.piece()), ImmutableList.of()),
+				detectiveTickets, get(occupancy, mrXIndex));
+	}
+
+	// Bit of a piece in the remaining mask, following the order of ScotlandYard.ALL_PIECES
+	private static int bit(Piece piece) { return 1 << ALL_PIECES.indexOf(piece); }
+
+	private static boolean get(long[] bits, int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	private static int ticketBit(Ticket ticket) { return 1 << ticket.ordinal(); }
+
+	// Zobrist key of every piece in a remaining mask
+	private static long remainingKey(int remaining) {
+		long key = 0;
+		for (int mask = remaining; mask != 0; mask &= mask - 1) {
+			key ^= Zobrist.remaining(Integer.numberOfTrailingZeros(mask));
+		}
+		return key;
+	}
+
+	private static final class BitboardGameState implements GameState {
+
+		private final GameSetup setup;
+		private final CompiledGraph graph;
+		private final int mrXBit; // Mr X's bit in the remaining mask
+		private final int remaining; // Players who have not yet moved in the current round
+		private final TravelLog log;
+		private final Player mrX;
+		private final Player[] detectives;
+		private final int[] locations; // Station index of each detective, parallel to detectives
+		private final long[] occupancy; // Stations occupied by detectives
+		private final long[] mrXBoard; // Station occupied by Mr X
+		private final long key; // Zobrist key, updated incrementally by advance
+		private final int detectiveTickets; // Total tickets held by detectives
+		private final boolean captured; // Whether a detective is on Mr X's station
+		// Computed lazily at most once per state, see MyGameStateFactory
+		private volatile ImmutableSet<Move> moves;
+		private volatile MoveSet moveSet;
+		private volatile ImmutableSet<Piece> winner;
+
+		private BitboardGameState(
+				GameSetup setup,
+				CompiledGraph graph,
+				int mrXBit,
+				int remaining,
+				TravelLog log,
+				Player mrX,
+				Player[] detectives,
+				int[] locations,
+				long[] occupancy,
+				long[] mrXBoard,
+				long key,
+				int detectiveTickets,
+				boolean captured) {
+			this.setup = setup;
+			this.graph = graph;
+			this.mrXBit = mrXBit;
+			this.remaining = remaining;
+			this.log = log;
+			this.mrX = mrX;
+			this.detectives = detectives;
+			this.locations = locations;
+			this.occupancy = occupancy;
+			this.mrXBoard = mrXBoard;
+			this.key = key;
+			this.detectiveTickets = detectiveTickets;
+			this.captured = captured;
+		}
+
+		@Nonnull @Override public GameSetup getSetup() { return setup; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() {
+			ImmutableSet.Builder<Piece> players = ImmutableSet.builder();
+			for (Player detective : detectives) players.add(detective.piece());
+			return players.add(mrX.piece()).build();
+		}
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			for (Player player : detectives) {
+				if (player.piece() == detective) return Optional.of(player.location());
+			}
+			return Optional.empty();
+		}
+
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			if (mrX.piece() == piece) return Optional.of(ticketBoard(mrX));
+			for (Player player : detectives) {
+				if (player.piece() == piece) return Optional.of(ticketBoard(player));
+			}
+			return Optional.empty();
+		}
+
+		private static TicketBoard ticketBoard(Player player) {
+			return player::count;
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() { return log.asList(); }
+
+		@Override public long getZobristKey() { return key; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+			ImmutableSet<Piece> result = winner;
+			if (result == null) winner = result = computeWinner();
+			return result;
+		}
+
+		// Captures and ticket totals are tracked by advance, the move probes stop at the first move
+		private ImmutableSet<Piece> computeWinner() {
+			// The detectives have run out of tickets
+			if (detectiveTickets == 0) return ImmutableSet.of(mrX.piece());
+			boolean detectivesCanMove = detectivesCanMove();
+			boolean logFull = log.size() == setup.moves.size();
+			// Mr X filled the log and the detectives have made their final moves
+			if (!detectivesCanMove && logFull) return ImmutableSet.of(mrX.piece());
+			// Mr X is caught, or nobody can move and Mr X is cornered
+			if (captured || (!logFull && (remaining & mrXBit) != 0
+					&& !detectivesCanMove && !canMove(mrX, mrXIndex()))) {
+				ImmutableSet.Builder<Piece> winners = ImmutableSet.builder();
+				for (Player detective : detectives) winners.add(detective.piece());
+				return winners.build();
+			}
+			return ImmutableSet.of();
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			ImmutableSet<Move> result = moves;
+			if (result == null) {
+				moves = result = getWinner().isEmpty() ? makeMoves() : ImmutableSet.of();
+			}
+			return result;
+		}
+
+		@Nonnull @Override public Set<Move> getAvailableMoveSet() {
+			if (!getWinner().isEmpty()) return ImmutableSet.of();
+			MoveSet result = moveSet;
+			if (result == null) {
+				moveSet = result = MoveSet.of(graph, movers(null), occupancy, doubleMovesAllowed(true));
+			}
+			return result;
+		}
+
+		private ImmutableSet<Move> makeMoves() { return ImmutableSet.copyOf(getAvailableMoveSet()); }
+
+		@Nonnull @Override public Stream<Move> moves() { return streamMoves(null, true); }
+
+		@Nonnull @Override public Stream<Move> moves(@Nonnull Piece piece) {
+			return streamMoves(Objects.requireNonNull(piece), true);
+		}
+
+		@Nonnull @Override public Stream<Move> singleMoves() { return streamMoves(null, false); }
+
+		private Stream<Move> streamMoves(Piece piece, boolean doubles) {
+			return getWinner().isEmpty() ? moveSpliterator(piece, doubles).stream() : Stream.empty();
+		}
+
+		// Moves of a piece, or of every player to move if it is null
+		private MoveSpliterator moveSpliterator(Piece piece, boolean doubles) {
+			return MoveSpliterator.of(graph, movers(piece), occupancy, doubleMovesAllowed(doubles));
+		}
+
+		private List<Player> movers(Piece piece) {
+			List<Player> movers = new ArrayList<>();
+			// Mr X moves once every remaining detective has moved or is stuck
+			if (detectivesCanMove()) {
+				for (Player detective : detectives) {
+					if ((remaining & bit(detective.piece())) != 0 && (piece == null || detective.piece() == piece)) {
+						movers.add(detective);
+					}
+				}
+			} else if (piece == null || piece == mrX.piece()) {
+				movers.add(mrX);
+			}
+			return movers;
+		}
+
+		private boolean doubleMovesAllowed(boolean doubles) {
+			return doubles && setup.moves.size() - log.size() >= 2;
+		}
+
+		private int mrXIndex() {
+			for (int i = 0; i < mrXBoard.length; i++) {
+				if (mrXBoard[i] != 0) return (i << 6) + Long.numberOfTrailingZeros(mrXBoard[i]);
+			}
+			throw new AssertionError("Mr X is not on the board");
+		}
+
+		// Tickets the player holds as a mask, secret tickets only apply to Mr X
+		private static int owned(Player player) {
+			int mask = 0;
+			for (Ticket ticket : Ticket.values()) {
+				if (player.has(ticket)) mask |= ticketBit(ticket);
+			}
+			return mask;
+		}
+
+		// Ticket mask of the moves a player can make along an edge
+		private static int usable(int edge, int owned, boolean mrX) {
+			return (mrX ? edge | ticketBit(Ticket.SECRET) : edge) & owned;
+		}
+
+		private boolean detectivesCanMove() {
+			for (int i = 0; i < detectives.length; i++) {
+				if ((remaining & bit(detectives[i].piece())) != 0
+						&& canMove(detectives[i], locations[i])) return true;
+			}
+			return false;
+		}
+
+		private boolean canMove(Player player, int source) {
+			int owned = owned(player);
+			for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+				if (!get(occupancy, graph.target(edge))
+						&& usable(graph.ticketMask(edge), owned, player.isMrX()) != 0) return true;
+			}
+			return false;
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			if (!isAvailable(move)) throw new IllegalArgumentException("Illegal move: " + move);
+			int destination = graph.indexOf(move.accept(new FunctionalVisitor<>(m -> m.destination, m -> m.destination2)));
+
+			if (move.commencedBy().isMrX()) {
+				TravelLog newLog = move.accept(new FunctionalVisitor<>(
+						m -> log.append(logEntry(m.ticket, m.destination, log.size())),
+						m -> log.append(logEntry(m.ticket1, m.destination1, log.size()))
+								.append(logEntry(m.ticket2, m.destination2, log.size() + 1))));
+				long[] newMrXBoard = new long[mrXBoard.length];
+				newMrXBoard[destination >>> 6] |= 1L << destination;
+				// Mr X moving always starts a new round
+				int everyone = mrXBit;
+				for (Player detective : detectives) everyone |= bit(detective.piece());
+				Player newMrX = mrX.at(graph.node(destination)).use(move.tickets());
+				long newKey = key ^ Zobrist.tickets(mrX, newMrX) ^ remainingKey(remaining ^ everyone);
+				for (int i = log.size(); i < newLog.size(); i++) newKey ^= Zobrist.logEntry(i, newLog.get(i));
+				// Mr X cannot move onto a detective
+				return new BitboardGameState(setup, graph, mrXBit, everyone, newLog,
+						newMrX, detectives, locations, occupancy, newMrXBoard, newKey,
+						detectiveTickets, false);
+			}
+
+			int slot = 0;
+			while (detectives[slot].piece() != move.commencedBy()) slot++;
+			Player[] newDetectives = detectives.clone();
+			newDetectives[slot] = detectives[slot].at(graph.node(destination)).use(move.tickets());
+			int[] newLocations = locations.clone();
+			newLocations[slot] = destination;
+			long[] newOccupancy = occupancy.clone();
+			newOccupancy[locations[slot] >>> 6] &= ~(1L << locations[slot]);
+			newOccupancy[destination >>> 6] |= 1L << destination;
+			int newRemaining = remaining & ~bit(move.commencedBy());
+			if (newRemaining == 0) {
+				newRemaining = mrXBit;
+				for (Player detective : detectives) newRemaining |= bit(detective.piece());
+			}
+			Player newMrX = mrX.give(move.tickets());
+			long newKey = key
+					^ Zobrist.location(move.commencedBy(), graph.node(locations[slot]))
+					^ Zobrist.location(move.commencedBy(), graph.node(destination))
+					^ Zobrist.tickets(detectives[slot], newDetectives[slot])
+					^ Zobrist.tickets(mrX, newMrX)
+					^ remainingKey(remaining ^ newRemaining);
+			return new BitboardGameState(setup, graph, mrXBit, newRemaining, log,
+					newMrX, newDetectives, newLocations, newOccupancy, mrXBoard, newKey,
+					detectiveTickets - 1, get(mrXBoard, destination));
+		}
+
+		// Checks whether a move is in getAvailableMoves() without generating the moves
+		private boolean isAvailable(Move move) {
+			if (move == null || !getWinner().isEmpty()) return false;
+			Player player = null;
+			int source = -1;
+			if (move.commencedBy().isMrX()) {
+				if (detectivesCanMove()) return false;
+				player = mrX;
+				source = mrXIndex();
+			} else if ((remaining & bit(move.commencedBy())) != 0) {
+				for (int i = 0; i < detectives.length; i++) {
+					if (detectives[i].piece() == move.commencedBy()) {
+						player = detectives[i];
+						source = locations[i];
+					}
+				}
+			}
+			if (player == null || graph.node(source) != move.source()) return false;
+
+			final Player mover = player;
+			final int from = source;
+			return move.accept(new FunctionalVisitor<>(
+					m -> mover.has(m.ticket) && canTravel(from, m.ticket, m.destination),
+					m -> mover.isMrX()
+							&& mover.has(Ticket.DOUBLE)
+							&& setup.moves.size() - log.size() >= 2
+							&& mover.has(m.ticket1)
+							&& mover.has(m.ticket2)
+							&& (m.ticket1 != m.ticket2 || mover.hasAtLeast(m.ticket1, 2))
+							&& canTravel(from, m.ticket1, m.destination1)
+							&& canTravel(graph.index(m.destination1), m.ticket2, m.destination2)));
+		}
+
+		// Checks whether a ticket can take a player from a station index to an unblocked station
+		private boolean canTravel(int from, Ticket ticket, int destination) {
+			int to = graph.index(destination);
+			if (to == -1 || get(occupancy, to)) return false;
+			int edge = graph.edge(from, to);
+			return edge != -1 && graph.canUse(edge, ticket);
+		}
+
+		private LogEntry logEntry(Ticket ticket, int destination, int round) {
+			return setup.moves.get(round) ? LogEntry.reveal(ticket, destination) : LogEntry.hidden(ticket);
+		}
+	}
+}
@@ -4,9 +4,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
 import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 
@@ -58,6 +61,38 @@ public interface Board {
 	 * This is mutually exclusive with {@link #getWinner()}
 	 */
 	@Nonnull ImmutableSet<Move> getAvailableMoves();
+	/**
+	 * @return the same moves as {@link #getAvailableMoves()} as an unmodifiable set view. Game
+	 * states keep double moves as the product of their legs, see {@link MoveSet}, so the view is
+	 * much cheaper to build, size and query than the moves themselves. The default returns
+	 * {@link #getAvailableMoves()}.
+	 */
+	@Nonnull default Set<Move> getAvailableMoveSet() { return getAvailableMoves(); }
+	/**
+	 * @return the same moves as {@link #getAvailableMoves()} as a stream. Game states generate
+	 * them on demand, so a search that stops early does not pay for every move, and
+	 * {@code moves().parallel()} shares the generation out across threads; see
+	 * {@link MoveSpliterator}. The default streams {@link #getAvailableMoves()}.
+	 */
+	@Nonnull default Stream<Move> moves() { return getAvailableMoves().stream(); }
+	/**
+	 * @param piece the piece
+	 * @return the available moves of the given piece, see {@link #moves()}
+	 */
+	@Nonnull default Stream<Move> moves(@Nonnull Piece piece) {
+		return moves().filter(move -> move.commencedBy() == piece);
+	}
+	/**
+	 * @return the available single moves, see {@link #moves()}
+	 */
+	@Nonnull default Stream<Move> singleMoves() { return moves().filter(move -> move instanceof SingleMove); }
+	/**
+	 * @return a 64-bit hash of everything on this board that all players can see, see
+	 * {@link Zobrist}; equal positions have equal keys so they can be used for transposition
+	 * tables. Game states keep the key up to date as they advance, the default computes it
+	 * from scratch.
+	 */
+	default long getZobristKey() { return Zobrist.of(this); }
 
 
 	/**
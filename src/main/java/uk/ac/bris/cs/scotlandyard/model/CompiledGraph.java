@@ -0,0 +1,288 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.graph.AbstractValueGraph;
+import com.google.common.graph.ElementOrder;
+import com.google.common.graph.EndpointPair;
+import com.google.common.graph.ValueGraph;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A read-only copy of a ScotlandYard graph laid out for move generation.
+ * <br>
+ * Stations are mapped to dense indices in ascending station order. Adjacency is stored in
+ * compressed sparse row form: the edges of index {@code i} are {@code start(i)} (inclusive) to
+ * {@code end(i)} (exclusive), each edge has a {@link #target(int)} index and a bitmask of
+ * {@link Transport} ordinals. Neighbours are also grouped by the {@link Ticket} needed to reach
+ * them, a {@link Ticket#SECRET} ticket reaches every neighbour and {@link Ticket#DOUBLE} none.
+ * <br>
+ * Use {@link #of(GameSetup)} to obtain the instance shared by every game on the same graph.
+ * The class implements {@link ValueGraph} so it can stand in for the graph it was compiled from.
+ */
+public final class CompiledGraph extends AbstractValueGraph<Integer, ImmutableSet<Transport>> {
+
+	private static final LoadingCache<ValueGraph<Integer, ImmutableSet<Transport>>, CompiledGraph>
+			CACHE = CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(CompiledGraph::new));
+
+	// Every possible edge value indexed by transport mask
+	private static final ImmutableList<ImmutableSet<Transport>> EDGE_VALUES = Sets
+			.powerSet(EnumSet.allOf(Transport.class)).stream()
+			.sorted((a, b) -> Integer.compare(transportMask(a), transportMask(b)))
+			.map(Sets::immutableEnumSet)
+			.collect(ImmutableList.toImmutableList());
+
+	private final int[] nodes; // Index to station
+	private final int[] indices; // Station to index, -1 if the station is not on the graph
+	private final int[] offsets; // Edge range of each index, offsets[i] to offsets[i + 1]
+	private final int[] targets; // Target index of each edge
+	private final int[] transports; // Transport mask of each edge
+	private final int[] tickets; // Mask of tickets that can be used on each edge, excluding secret
+	private final int[][] ticketOffsets; // Per ticket ordinal, like offsets
+	private final int[][] ticketTargets; // Per ticket ordinal, like targets
+	private final ImmutableSet<Integer> nodeSet;
+	private final ImmutableList<ImmutableSet<Integer>> adjacentSets;
+	private volatile String fingerprint; // Computed when first asked for
+
+	private CompiledGraph(ValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		if (graph.isDirected()) throw new IllegalArgumentException("Graph must be undirected");
+		nodes = graph.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+		indices = new int[nodes.length == 0 ? 0 : nodes[nodes.length - 1] + 1];
+		Arrays.fill(indices, -1);
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] < 0) throw new IllegalArgumentException("Negative station " + nodes[i]);
+			indices[nodes[i]] = i;
+		}
+
+		offsets = new int[nodes.length + 1];
+		for (int i = 0; i < nodes.length; i++) {
+			offsets[i + 1] = offsets[i] + graph.adjacentNodes(nodes[i]).size();
+		}
+		targets = new int[offsets[nodes.length]];
+		transports = new int[targets.length];
+		tickets = new int[targets.length];
+		for (int i = 0; i < nodes.length; i++) {
+			int[] neighbours = graph.adjacentNodes(nodes[i]).stream()
+					.mapToInt(Integer::intValue).sorted().toArray();
+			for (int j = 0; j < neighbours.length; j++) {
+				int edge = offsets[i] + j;
+				Set<Transport> value = Objects.requireNonNull(
+						graph.edgeValueOrDefault(nodes[i], neighbours[j], ImmutableSet.of()));
+				targets[edge] = indices[neighbours[j]];
+				transports[edge] = transportMask(value);
+				for (Transport transport : value) {
+					tickets[edge] |= 1 << transport.requiredTicket().ordinal();
+				}
+			}
+		}
+
+		ticketOffsets = new int[Ticket.values().length][];
+		ticketTargets = new int[Ticket.values().length][];
+		for (Ticket ticket : Ticket.values()) {
+			int[] ticketOffset = new int[nodes.length + 1];
+			int[] ticketTarget = new int[targets.length];
+			int count = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				ticketOffset[i] = count;
+				for (int edge = offsets[i]; edge < offsets[i + 1]; edge++) {
+					if (canUse(edge, ticket)) ticketTarget[count++] = targets[edge];
+				}
+			}
+			ticketOffset[nodes.length] = count;
+			ticketOffsets[ticket.ordinal()] = ticketOffset;
+			ticketTargets[ticket.ordinal()] = Arrays.copyOf(ticketTarget, count);
+		}
+
+		nodeSet = Arrays.stream(nodes).boxed().collect(ImmutableSet.toImmutableSet());
+		adjacentSets = Arrays.stream(nodes).mapToObj(node -> {
+			int index = indices[node];
+			return Arrays.stream(targets, offsets[index], offsets[index + 1])
+					.mapToObj(target -> nodes[target])
+					.collect(ImmutableSet.toImmutableSet());
+		}).collect(ImmutableList.toImmutableList());
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the compiled graph of the setup's graph, shared by every setup using that graph
+	 */
+	@Nonnull public static CompiledGraph of(@Nonnull GameSetup setup) {
+		return of(setup.graph);
+	}
+
+	/**
+	 * @param graph the graph to compile
+	 * @return the compiled graph, compiled once for each graph instance
+	 */
+	@Nonnull public static CompiledGraph of(@Nonnull ValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		if (graph instanceof CompiledGraph) return (CompiledGraph) graph;
+		return CACHE.getUnchecked(Objects.requireNonNull(graph));
+	}
+
+	private static int transportMask(Set<Transport> transports) {
+		int mask = 0;
+		for (Transport transport : transports) mask |= 1 << transport.ordinal();
+		return mask;
+	}
+
+	/**
+	 * @return the number of stations
+	 */
+	public int size() { return nodes.length; }
+	/**
+	 * @return a SHA-256 hash of the stations and edges in hex, the same for every compilation of
+	 * an equal graph, for naming files built from the graph
+	 */
+	@Nonnull public String fingerprint() {
+		String result = fingerprint;
+		if (result == null) {
+			Hasher hasher = Hashing.sha256().newHasher().putInt(size());
+			for (int i = 0; i < size(); i++) {
+				hasher.putInt(node(i)).putInt(end(i) - start(i));
+				for (int edge = start(i); edge < end(i); edge++) {
+					hasher.putInt(target(edge)).putInt(transportMask(edge));
+				}
+			}
+			fingerprint = result = hasher.hash().toString();
+		}
+		return result;
+	}
+	/**
+	 * @return the number of longs in a bitset with one bit for each station index
+	 */
+	public int words() { return (nodes.length + 63) >>> 6; }
+	/**
+	 * @param index the station index
+	 * @return the station at the given index
+	 */
+	public int node(int index) { return nodes[index]; }
+	/**
+	 * @param node the station
+	 * @return the index of the station; -1 if the station is not on the graph
+	 */
+	public int index(int node) {
+		return node >= 0 && node < indices.length ? indices[node] : -1;
+	}
+	/**
+	 * @param node the station
+	 * @return the index of the station
+	 * @throws IllegalArgumentException if the station is not on the graph
+	 */
+	public int indexOf(int node) {
+		int index = index(node);
+		if (index == -1) throw new IllegalArgumentException("Location " + node + " is not on the graph");
+		return index;
+	}
+	/**
+	 * @param index the station index
+	 * @return the first edge of the station
+	 */
+	public int start(int index) { return offsets[index]; }
+	/**
+	 * @param index the station index
+	 * @return one past the last edge of the station
+	 */
+	public int end(int index) { return offsets[index + 1]; }
+	/**
+	 * @param edge the edge
+	 * @return the index of the station the edge leads to
+	 */
+	public int target(int edge) { return targets[edge]; }
+	/**
+	 * @param edge the edge
+	 * @return the transports of the edge as a mask of {@link Transport} ordinals
+	 */
+	public int transportMask(int edge) { return transports[edge]; }
+	/**
+	 * @param edge the edge
+	 * @return the tickets required by the edge's transports as a mask of {@link Ticket} ordinals;
+	 * this does not include {@link Ticket#SECRET} unless the edge is a ferry route
+	 */
+	public int ticketMask(int edge) { return tickets[edge]; }
+	/**
+	 * @param edge the edge
+	 * @param ticket the ticket
+	 * @return whether the ticket can be used to travel along the edge
+	 */
+	public boolean canUse(int edge, @Nonnull Ticket ticket) {
+		switch (ticket) {
+			case SECRET: return true;
+			case DOUBLE: return false;
+			default: return (tickets[edge] & (1 << ticket.ordinal())) != 0;
+		}
+	}
+	/**
+	 * @param ticket the ticket
+	 * @param index the station index
+	 * @return the first position of the station's neighbours reachable with the ticket
+	 */
+	public int start(@Nonnull Ticket ticket, int index) { return ticketOffsets[ticket.ordinal()][index]; }
+	/**
+	 * @param ticket the ticket
+	 * @param index the station index
+	 * @return one past the last position of the station's neighbours reachable with the ticket
+	 */
+	public int end(@Nonnull Ticket ticket, int index) { return ticketOffsets[ticket.ordinal()][index + 1]; }
+	/**
+	 * @param ticket the ticket
+	 * @param position a position between {@link #start(Ticket, int)} and {@link #end(Ticket, int)}
+	 * @return the neighbour index at the given position
+	 */
+	public int target(@Nonnull Ticket ticket, int position) { return ticketTargets[ticket.ordinal()][position]; }
+	/**
+	 * @param from the station index
+	 * @param to the station index
+	 * @return the edge from one station index to the other; -1 if they are not adjacent
+	 */
+	public int edge(int from, int to) {
+		// neighbours are sorted by station and indices follow station order
+		int edge = Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to);
+		return edge < 0 ? -1 : edge;
+	}
+
+	private int checkedIndex(Object node) {
+		int index = node instanceof Integer ? index((Integer) node) : -1;
+		if (index == -1) throw new IllegalArgumentException("Node " + node + " is not an element of this graph.");
+		return index;
+	}
+
+	@Override public Set<Integer> nodes() { return nodeSet; }
+	@Override public boolean isDirected() { return false; }
+	@Override public boolean allowsSelfLoops() { return false; }
+	@Override public ElementOrder<Integer> nodeOrder() { return ElementOrder.natural(); }
+	@Override public Set<Integer> adjacentNodes(Integer node) { return adjacentSets.get(checkedIndex(node)); }
+	@Override public Set<Integer> predecessors(Integer node) { return adjacentNodes(node); }
+	@Override public Set<Integer> successors(Integer node) { return adjacentNodes(node); }
+	@Override public int degree(Integer node) {
+		int index = checkedIndex(node);
+		return offsets[index + 1] - offsets[index];
+	}
+	@Override public boolean hasEdgeConnecting(Integer nodeU, Integer nodeV) {
+		int u = index(nodeU), v = index(nodeV);
+		return u != -1 && v != -1 && edge(u, v) != -1;
+	}
+	@Override public ImmutableSet<Transport> edgeValueOrDefault(
+			Integer nodeU, Integer nodeV, ImmutableSet<Transport> defaultValue) {
+		int edge = edge(checkedIndex(nodeU), checkedIndex(nodeV));
+		return edge == -1 ? defaultValue : EDGE_VALUES.get(transports[edge]);
+	}
+	@Override public ImmutableSet<Transport> edgeValueOrDefault(
+			EndpointPair<Integer> endpoints, ImmutableSet<Transport> defaultValue) {
+		return edgeValueOrDefault(endpoints.nodeU(), endpoints.nodeV(), defaultValue);
+	}
+}
@@ -0,0 +1,245 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * The number of journeys between every pair of stations using a subset of the transports.
+ * <br>
+ * Distances are stored as an unsigned {@code byte} matrix over the station indices of the
+ * {@link CompiledGraph}, {@link #UNREACHABLE} where no route exists. Each graph has one table for
+ * every transport, one for all of them and one for the transports detectives can use, which
+ * leaves out {@link Transport#FERRY}. Ticket counts are not taken into account.
+ * <br>
+ * The tables of a graph are built together in parallel when first asked for and shared by every
+ * game on the graph. They are also saved to a cache directory under a hash of the graph, so later
+ * runs on the same graph load them instead. The directory is the {@value #CACHE_PROPERTY} system
+ * property if set, otherwise {@code scotlandyard} in the temporary directory; the cache is only
+ * an optimisation and failing to read or write it is ignored.
+ */
+public final class DistanceTable {
+
+	/**
+	 * The distance between stations with no route between them
+	 */
+	public static final int UNREACHABLE = 0xFF;
+	/**
+	 * The system property naming the directory tables are cached in
+	 */
+	public static final String CACHE_PROPERTY = "scotlandyard.cache";
+
+	private static final int TAXI = 1 << Transport.TAXI.ordinal();
+	private static final int BUS = 1 << Transport.BUS.ordinal();
+	private static final int UNDERGROUND = 1 << Transport.UNDERGROUND.ordinal();
+	private static final int FERRY = 1 << Transport.FERRY.ordinal();
+	// Transport masks of the tables, in the order they are stored in
+	private static final int[] MASKS =
+			{ TAXI | BUS | UNDERGROUND | FERRY, TAXI, BUS, UNDERGROUND, FERRY, TAXI | BUS | UNDERGROUND };
+	private static final int ALL = 0, DETECTIVE = 5;
+	private static final int MAGIC = 0x53594454, VERSION = 1; // "SYDT"
+
+	private static final LoadingCache<CompiledGraph, ImmutableList<DistanceTable>> CACHE =
+			CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(graph -> load(graph, directory())));
+
+	private final CompiledGraph graph;
+	private final int transports;
+	private final int size;
+	private final byte[] distances; // Row of each source index, size * size
+
+	private DistanceTable(CompiledGraph graph, int transports, byte[] distances) {
+		this.graph = graph;
+		this.transports = transports;
+		this.size = graph.size();
+		this.distances = distances;
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the distances using every transport
+	 */
+	@Nonnull public static DistanceTable all(@Nonnull CompiledGraph graph) { return tables(graph).get(ALL); }
+
+	/**
+	 * @param graph the compiled graph
+	 * @param transport the only transport to use
+	 * @return the distances using only the transport
+	 */
+	@Nonnull public static DistanceTable of(@Nonnull CompiledGraph graph, @Nonnull Transport transport) {
+		return tables(graph).get(1 + transport.ordinal());
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the distances using the transports detectives have tickets for
+	 */
+	@Nonnull public static DistanceTable detective(@Nonnull CompiledGraph graph) {
+		return tables(graph).get(DETECTIVE);
+	}
+
+	private static ImmutableList<DistanceTable> tables(CompiledGraph graph) {
+		return CACHE.getUnchecked(Objects.requireNonNull(graph));
+	}
+
+	private static Path directory() {
+		String directory = System.getProperty(CACHE_PROPERTY);
+		return directory != null
+				? Paths.get(directory)
+				: Paths.get(System.getProperty("java.io.tmpdir"), "scotlandyard");
+	}
+
+	// Reads the tables of the graph from the directory, building and saving them if they are not there
+	static ImmutableList<DistanceTable> load(CompiledGraph graph, Path directory) {
+		Path file = directory.resolve("distances-" + graph.fingerprint() + ".bin");
+		int n = graph.size();
+		byte[][] matrices = read(file, n);
+		if (matrices == null) {
+			matrices = build(graph);
+			write(file, matrices, n);
+		}
+		ImmutableList.Builder<DistanceTable> tables = ImmutableList.builder();
+		for (int t = 0; t < MASKS.length; t++) tables.add(new DistanceTable(graph, MASKS[t], matrices[t]));
+		return tables.build();
+	}
+
+	private static byte[][] build(CompiledGraph graph) {
+		int n = graph.size();
+		byte[][] matrices = new byte[MASKS.length][n * n];
+		// Every (table, source) pair fills its own row, so rows can be searched in parallel
+		IntStream.range(0, MASKS.length * n).parallel().forEach(k -> {
+			int table = k / n, source = k % n;
+			search(graph, MASKS[table], source, matrices[table], source * n);
+		});
+		return matrices;
+	}
+
+	private static void search(CompiledGraph graph, int mask, int source, byte[] matrix, int row) {
+		Arrays.fill(matrix, row, row + graph.size(), (byte) UNREACHABLE);
+		int[] queue = new int[graph.size()];
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		matrix[row + source] = 0;
+		while (head < tail) {
+			int index = queue[head++];
+			int distance = (matrix[row + index] & 0xFF) + 1;
+			if (distance >= UNREACHABLE)
+				throw new IllegalArgumentException("Graph is too long for byte distances");
+			for (int edge = graph.start(index); edge < graph.end(index); edge++) {
+				int target = graph.target(edge);
+				if ((graph.transportMask(edge) & mask) != 0 && matrix[row + target] == (byte) UNREACHABLE) {
+					matrix[row + target] = (byte) distance;
+					queue[tail++] = target;
+				}
+			}
+		}
+	}
+
+	private static byte[][] read(Path file, int n) {
+		try {
+			if (!Files.isRegularFile(file)) return null;
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+			if (buffer.remaining() != 16 + MASKS.length * n * n
+					|| buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+					|| buffer.getInt() != n || buffer.getInt() != MASKS.length) return null;
+			byte[][] matrices = new byte[MASKS.length][n * n];
+			for (byte[] matrix : matrices) buffer.get(matrix);
+			return matrices;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void write(Path file, byte[][] matrices, int n) {
+		ByteBuffer buffer = ByteBuffer.allocate(16 + MASKS.length * n * n);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(MASKS.length);
+		for (byte[] matrix : matrices) buffer.put(matrix);
+		Path temporary = null;
+		try {
+			// Written next to the file and moved into place, so readers never see half a file
+			Files.createDirectories(file.getParent());
+			temporary = Files.createTempFile(file.getParent(), "distances", ".tmp");
+			Files.write(temporary, buffer.array());
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				// A reader may then see half a file, which fails the size check and is built again
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | UnsupportedOperationException e) {
+			// Not cached, built again next time
+		} finally {
+			// Only still there if the move failed
+			if (temporary != null) {
+				try {
+					Files.deleteIfExists(temporary);
+				} catch (IOException e) {
+					// Left for the system to clean up with the rest of its temporary files
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param from the station index to start from
+	 * @param to the station index to reach
+	 * @return the fewest journeys between the indices, or {@link #UNREACHABLE}
+	 */
+	public int indexDistance(int from, int to) { return distances[from * size + to] & 0xFF; }
+
+	/**
+	 * @param from the station to start from
+	 * @param to the station to reach
+	 * @return the fewest journeys between the stations, or {@link #UNREACHABLE}
+	 * @throws IllegalArgumentException if either station is not on the graph
+	 */
+	public int distance(int from, int to) {
+		return indexDistance(graph.indexOf(from), graph.indexOf(to));
+	}
+
+	/**
+	 * @param to the station index to reach
+	 * @param from the station indices to start from, as a bitset
+	 * @return the fewest journeys from any of the indices, or {@link #UNREACHABLE}
+	 */
+	public int nearest(int to, @Nonnull long[] from) {
+		int nearest = UNREACHABLE;
+		for (int word = 0; word < from.length; word++) {
+			for (long w = from[word]; w != 0; w &= w - 1) {
+				int index = (word << 6) + Long.numberOfTrailingZeros(w);
+				nearest = Math.min(nearest, distances[index * size + to] & 0xFF);
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * @return the transports the distances use
+	 */
+	@Nonnull public ImmutableSet<Transport> transports() {
+		EnumSet<Transport> result = EnumSet.noneOf(Transport.class);
+		for (Transport transport : Transport.values()) {
+			if ((transports & 1 << transport.ordinal()) != 0) result.add(transport);
+		}
+		return ImmutableSet.copyOf(result);
+	}
+
+	@Override public String toString() { return "DistanceTable" + transports(); }
+}
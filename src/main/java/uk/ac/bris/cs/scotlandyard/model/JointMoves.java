@@ -0,0 +1,226 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * Enumerates the joint moves of the detectives still to move in a round of a {@link SearchState},
+ * so a search can treat the rest of the round as one ply instead of one for each detective.
+ * <br>
+ * A joint move gives each detective still to move either one move or none, and is listed in an
+ * order that is legal to play one after another. Every position {@link GameState#advance(Move)}
+ * can reach by the time Mr X is next to move, whatever order the detectives move in, comes from
+ * exactly one joint move:
+ * <ul>
+ *     <li>No two detectives end on the same station.</li>
+ *     <li>A detective can move onto a station another one leaves, so it moves after that one;
+ *     detectives cannot swap stations or move round in a cycle.</li>
+ *     <li>A detective that does not move must have no move left once the others have moved.</li>
+ *     <li>A detective that lands on Mr X moves last, as the game ends there; the others need not
+ *     have moved.</li>
+ * </ul>
+ * The joint moves are enumerated lazily as a product of each detective's moves, rejecting a
+ * partial product as soon as two detectives collide, so only the moves asked for are built.
+ * <br>
+ * Instances are reusable with {@link #reset(SearchState)} and are not thread safe.
+ */
+public final class JointMoves {
+
+	private static final int DETECTIVES = ALL_PIECES.size() - 1;
+	private static final int TICKETS = 3; // Detectives only hold taxi, bus and underground tickets
+
+	private SearchState state;
+	private int count; // Detectives still to move
+	private final int[] slots = new int[DETECTIVES];
+	private final int[] sources = new int[DETECTIVES]; // Station indices
+	private final int[] sizes = new int[DETECTIVES]; // Moves of each detective
+	private final long[][] moves = new long[DETECTIVES][16];
+	private final int[][] targets = new int[DETECTIVES][16]; // Station index each move ends on
+	private final int[] choices = new int[DETECTIVES]; // Move chosen, sizes[level] to stay put
+	private final int[] fixed = new int[DETECTIVES]; // Stations of detectives that already moved
+	private int fixedCount;
+	private int mrX; // Station index of Mr X
+	private boolean started, done = true;
+	private final MoveList current = new MoveList(DETECTIVES);
+
+	/**
+	 * Starts enumerating the joint moves of a state. There are none if the game is over or it is
+	 * Mr X's turn.
+	 *
+	 * @param state the state, which must not change while enumerating
+	 */
+	public void reset(@Nonnull SearchState state) {
+		this.state = Objects.requireNonNull(state);
+		CompiledGraph graph = state.graph();
+		count = 0;
+		fixedCount = 0;
+		started = false;
+		current.clear();
+		done = state.isGameOver() || state.isMrXTurn();
+		if (done) return;
+		mrX = graph.indexOf(state.location(0));
+		for (int slot = 1; slot < state.slots(); slot++) {
+			int source = graph.indexOf(state.location(slot));
+			if (state.isRemaining(slot)) {
+				slots[count] = slot;
+				sources[count++] = source;
+			} else fixed[fixedCount++] = source;
+		}
+		for (int level = 0; level < count; level++) addMoves(graph, level);
+	}
+
+	// Lists the moves of a detective, leaving out stations of detectives that already moved
+	private void addMoves(CompiledGraph graph, int level) {
+		int slot = slots[level], source = sources[level];
+		int owned = 0;
+		for (int ticket = 0; ticket < TICKETS; ticket++) {
+			if (state.tickets(slot, Ticket.values()[ticket]) > 0) owned |= 1 << ticket;
+		}
+		int size = 0;
+		for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+			int target = graph.target(edge);
+			if (isFixed(target)) continue;
+			for (int mask = graph.ticketMask(edge) & owned; mask != 0; mask &= mask - 1) {
+				if (size == moves[level].length) {
+					moves[level] = Arrays.copyOf(moves[level], size * 2);
+					targets[level] = Arrays.copyOf(targets[level], size * 2);
+				}
+				moves[level][size] = PackedMove.single(state.pieceIndex(slot), graph.node(source),
+						Integer.numberOfTrailingZeros(mask), graph.node(target));
+				targets[level][size++] = target;
+			}
+		}
+		sizes[level] = size;
+	}
+
+	private boolean isFixed(int station) {
+		for (int i = 0; i < fixedCount; i++) {
+			if (fixed[i] == station) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves on to the next joint move
+	 *
+	 * @return whether there is one, in which case it is {@link #moves()}
+	 */
+	public boolean next() {
+		if (done) return false;
+		int level;
+		if (started) level = count - 1;
+		else {
+			started = true;
+			level = 0;
+			choices[0] = -1;
+		}
+		while (level >= 0) {
+			if (++choices[level] > sizes[level]) {
+				level--;
+				continue;
+			}
+			if (collides(level)) continue;
+			if (level < count - 1) choices[++level] = -1;
+			else if (order()) return true;
+		}
+		done = true;
+		current.clear();
+		return false;
+	}
+
+	/**
+	 * @return the {@link PackedMove packed moves} of the current joint move in an order that is
+	 * legal to play, for {@link SearchState#make(MoveList)} or {@link #advance(GameState, MoveList)};
+	 * the list is reused by {@link #next()}
+	 */
+	@Nonnull public MoveList moves() { return current; }
+
+	private boolean stays(int level) { return choices[level] == sizes[level]; }
+
+	// Station index the detective at a level ends the round on
+	private int end(int level) { return stays(level) ? sources[level] : targets[level][choices[level]]; }
+
+	// Whether the detective at a level ends on the same station as one at a lower level
+	private boolean collides(int level) {
+		int end = end(level);
+		for (int i = 0; i < level; i++) {
+			if (end(i) == end) return true;
+		}
+		return false;
+	}
+
+	// Orders the moves of a full product into the current joint move if there is a legal order
+	private boolean order() {
+		int capturer = -1;
+		int pending = 0; // Levels of moves not yet ordered
+		for (int level = 0; level < count; level++) {
+			if (stays(level)) continue;
+			if (end(level) == mrX) capturer = level;
+			pending |= 1 << level;
+		}
+		// Without a capture the round only ends once nobody left can move
+		if (capturer == -1) {
+			for (int level = 0; level < count; level++) {
+				if (stays(level) && canMove(level)) return false;
+			}
+		}
+		current.clear();
+		int waiting = pending & ~(capturer == -1 ? 0 : 1 << capturer);
+		while (waiting != 0) {
+			int before = waiting;
+			for (int mask = waiting; mask != 0; mask &= mask - 1) {
+				int level = Integer.numberOfTrailingZeros(mask);
+				if (isLeaving(pending, end(level))) continue;
+				current.add(moves[level][choices[level]]);
+				pending &= ~(1 << level);
+				waiting &= ~(1 << level);
+			}
+			if (waiting == before) return false; // Detectives waiting on each other
+		}
+		if (capturer != -1) current.add(moves[capturer][choices[capturer]]);
+		return true;
+	}
+
+	// Whether a detective still to move is on a station
+	private boolean isLeaving(int pending, int station) {
+		for (int mask = pending; mask != 0; mask &= mask - 1) {
+			if (sources[Integer.numberOfTrailingZeros(mask)] == station) return true;
+		}
+		return false;
+	}
+
+	// Whether the detective at a level has a move once every detective is on their end station
+	private boolean canMove(int level) {
+		for (int i = 0; i < sizes[level]; i++) {
+			if (!isEnd(targets[level][i])) return true;
+		}
+		return false;
+	}
+
+	private boolean isEnd(int station) {
+		for (int level = 0; level < count; level++) {
+			if (end(level) == station) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Advances a game state by every move of a joint move in turn
+	 *
+	 * @param state the game state
+	 * @param moves the packed moves, see {@link #moves()}
+	 * @return the game state after the joint move
+	 */
+	@Nonnull public static GameState advance(@Nonnull GameState state, @Nonnull MoveList moves) {
+		MovePool pool = MovePool.of(state.getSetup());
+		for (int i = 0; i < moves.size(); i++) state = state.advance(pool.get(moves.get(i)));
+		return state;
+	}
+}
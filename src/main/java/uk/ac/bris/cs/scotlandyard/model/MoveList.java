@@ -0,0 +1,121 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A growable list of {@link PackedMove packed moves}. Clearing keeps the backing array, so a list
+ * reused across a search only allocates while it grows to the largest number of moves seen.
+ */
+public final class MoveList {
+
+	private long[] moves;
+	private int size;
+
+	/**
+	 * Creates a list with room for the moves of a typical position
+	 */
+	public MoveList() { this(64); }
+
+	/**
+	 * @param capacity the initial capacity
+	 */
+	public MoveList(int capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("Negative capacity " + capacity);
+		moves = new long[capacity];
+	}
+
+	/**
+	 * @param move the packed move to add
+	 */
+	public void add(long move) {
+		if (size == moves.length) moves = Arrays.copyOf(moves, Math.max(16, size * 2));
+		moves[size++] = move;
+	}
+
+	/**
+	 * @param index the index
+	 * @return the packed move at the index
+	 */
+	public long get(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException(index);
+		return moves[index];
+	}
+
+	/**
+	 * @param index the index
+	 * @param move the packed move to store at the index
+	 */
+	public void set(int index, long move) {
+		if (index >= size) throw new IndexOutOfBoundsException(index);
+		moves[index] = move;
+	}
+
+	/**
+	 * Swaps two moves, for ordering moves in place
+	 *
+	 * @param i the index of one move
+	 * @param j the index of the other move
+	 */
+	public void swap(int i, int j) {
+		if (i >= size || j >= size) throw new IndexOutOfBoundsException(Math.max(i, j));
+		long move = moves[i];
+		moves[i] = moves[j];
+		moves[j] = move;
+	}
+
+	/**
+	 * @return the number of moves
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @return whether there are no moves
+	 */
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * Removes every move, keeping the capacity
+	 */
+	public void clear() { size = 0; }
+
+	/**
+	 * @param move the packed move
+	 * @return whether the list contains the move
+	 */
+	public boolean contains(long move) {
+		for (int i = 0; i < size; i++) {
+			if (moves[i] == move) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return a copy of the packed moves
+	 */
+	@Nonnull public long[] toArray() { return Arrays.copyOf(moves, size); }
+
+	/**
+	 * @return the moves unpacked, in list order
+	 */
+	@Nonnull public ImmutableList<Move> toMoves() {
+		ImmutableList.Builder<Move> builder = ImmutableList.builderWithExpectedSize(size);
+		for (int i = 0; i < size; i++) builder.add(PackedMove.unpack(moves[i]));
+		return builder.build();
+	}
+
+	/**
+	 * @return the moves unpacked as a set
+	 */
+	@Nonnull public ImmutableSet<Move> toMoveSet() {
+		ImmutableSet.Builder<Move> builder = ImmutableSet.builderWithExpectedSize(size);
+		for (int i = 0; i < size; i++) builder.add(PackedMove.unpack(moves[i]));
+		return builder.build();
+	}
+
+	@Override public String toString() { return toMoves().toString(); }
+}
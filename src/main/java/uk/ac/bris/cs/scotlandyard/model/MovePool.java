@@ -0,0 +1,158 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * Interned {@link Move} instances for one graph, so every game state on the graph hands out the
+ * same object for the same move instead of allocating a new one each time moves are generated.
+ * <br>
+ * Single moves are keyed by (piece, edge, ticket), which is the same as (piece, source, ticket,
+ * destination) as edges are numbered by the {@link CompiledGraph}. Double moves are far more
+ * numerous and mostly never played, so they are interned on first use in a map keyed by their
+ * {@link PackedMove packed} form.
+ * <br>
+ * Use {@link #of(CompiledGraph)} to obtain the pool shared by every game on the same graph. Pools
+ * are thread safe; a move requested by two threads at once is still created only once.
+ */
+public final class MovePool {
+
+	private static final LoadingCache<CompiledGraph, MovePool> CACHE =
+			CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(MovePool::new));
+
+	private static final int TICKETS = Ticket.values().length;
+	private static final Piece[] PIECES = ALL_PIECES.toArray(new Piece[0]);
+	private static final Ticket[] TICKET_VALUES = Ticket.values();
+
+	// Rough object sizes with compressed references, for the footprint report
+	private static final int SINGLE_BYTES = 32, DOUBLE_BYTES = 40, MAP_ENTRY_BYTES = 56;
+
+	private final CompiledGraph graph;
+	private final int edges;
+	private final AtomicReferenceArray<SingleMove> singles; // (piece * edges + edge) * TICKETS + ticket
+	private final AtomicInteger singleCount = new AtomicInteger();
+	private final ConcurrentMap<Long, DoubleMove> doubles = new ConcurrentHashMap<>();
+
+	private MovePool(CompiledGraph graph) {
+		this.graph = graph;
+		this.edges = graph.size() == 0 ? 0 : graph.end(graph.size() - 1);
+		this.singles = new AtomicReferenceArray<>(PIECES.length * edges * TICKETS);
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the pool of the setup's graph
+	 */
+	@Nonnull public static MovePool of(@Nonnull GameSetup setup) { return of(CompiledGraph.of(setup)); }
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the pool shared by every game on the graph
+	 */
+	@Nonnull public static MovePool of(@Nonnull CompiledGraph graph) {
+		return CACHE.getUnchecked(Objects.requireNonNull(graph));
+	}
+
+	/**
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the source station index
+	 * @param edge the edge from the source, between {@link CompiledGraph#start(int)} and
+	 * {@link CompiledGraph#end(int)} of the source
+	 * @param ticket the ticket ordinal
+	 * @return the interned single move
+	 */
+	@Nonnull public SingleMove single(int piece, int source, int edge, int ticket) {
+		int key = (piece * edges + edge) * TICKETS + ticket;
+		SingleMove move = singles.get(key);
+		if (move != null) return move;
+		move = new SingleMove(PIECES[piece], graph.node(source), TICKET_VALUES[ticket],
+				graph.node(graph.target(edge)));
+		if (singles.compareAndSet(key, null, move)) {
+			singleCount.incrementAndGet();
+			return move;
+		}
+		return singles.get(key);
+	}
+
+	/**
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the source station index
+	 * @param edge1 the edge of the first leg, from the source
+	 * @param ticket1 the ticket ordinal of the first leg
+	 * @param edge2 the edge of the second leg, from the target of the first
+	 * @param ticket2 the ticket ordinal of the second leg
+	 * @return the interned double move
+	 */
+	@Nonnull public DoubleMove doubleMove(int piece, int source, int edge1, int ticket1, int edge2, int ticket2) {
+		int middle = graph.node(graph.target(edge1));
+		int destination = graph.node(graph.target(edge2));
+		long key = PackedMove.doubleMove(piece, graph.node(source), ticket1, middle, ticket2, destination);
+		DoubleMove move = doubles.get(key);
+		if (move != null) return move;
+		return doubles.computeIfAbsent(key, k -> new DoubleMove(PIECES[piece], graph.node(source),
+				TICKET_VALUES[ticket1], middle, TICKET_VALUES[ticket2], destination));
+	}
+
+	/**
+	 * @param move the {@link PackedMove packed move}
+	 * @return the interned move; a new move if it does not follow edges of the graph
+	 */
+	@Nonnull public Move get(long move) {
+		int source = graph.index(PackedMove.source(move));
+		int middle = graph.index(PackedMove.destination1(move));
+		int edge1 = source == -1 || middle == -1 ? -1 : graph.edge(source, middle);
+		if (edge1 == -1) return PackedMove.unpack(move);
+		if (!PackedMove.isDouble(move))
+			return single(PackedMove.pieceIndex(move), source, edge1, PackedMove.ticket1Ordinal(move));
+		int destination = graph.index(PackedMove.destination2(move));
+		int edge2 = destination == -1 ? -1 : graph.edge(middle, destination);
+		if (edge2 == -1) return PackedMove.unpack(move);
+		return doubleMove(PackedMove.pieceIndex(move), source, edge1, PackedMove.ticket1Ordinal(move),
+				edge2, PackedMove.ticket2Ordinal(move));
+	}
+
+	/**
+	 * @param move the move
+	 * @return the interned instance equal to the move, see {@link #get(long)}
+	 */
+	@Nonnull public Move intern(@Nonnull Move move) { return get(PackedMove.pack(move)); }
+
+	/**
+	 * @return the number of single moves interned so far
+	 */
+	public int singleCount() { return singleCount.get(); }
+
+	/**
+	 * @return the number of double moves interned so far
+	 */
+	public int doubleCount() { return doubles.size(); }
+
+	/**
+	 * @return an estimate of the heap used by the pool in bytes, including the interned moves
+	 */
+	public long estimatedBytes() {
+		return 16L + 4L * singles.length()
+				+ (long) SINGLE_BYTES * singleCount()
+				+ (long) (DOUBLE_BYTES + MAP_ENTRY_BYTES) * doubleCount();
+	}
+
+	@Override public String toString() {
+		return String.format("MovePool{%d single moves, %d double moves, ~%d KiB}",
+				singleCount(), doubleCount(), estimatedBytes() / 1024);
+	}
+}
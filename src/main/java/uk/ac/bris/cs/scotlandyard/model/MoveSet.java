@@ -0,0 +1,211 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * An unmodifiable set of available moves that stores double moves as the product of their legs.
+ * <br>
+ * A double move is any first leg followed by any second leg from where the first leg ends, so
+ * the set keeps only the first legs and walks the graph for the second legs. Building the set,
+ * {@link #size()} and {@link #contains(Object)} therefore cost time in the number of legs rather
+ * than the number of double moves, which with secret tickets from a busy station is several
+ * thousand. Double moves are only created while iterating, and are interned by the graph's
+ * {@link MovePool}.
+ * <br>
+ * Single moves are few and are held as an {@link ImmutableSet}.
+ */
+public final class MoveSet extends AbstractSet<Move> {
+
+	private static final int SECRET = 1 << Ticket.SECRET.ordinal();
+
+	private final CompiledGraph graph;
+	private final MovePool pool;
+	private final long[] occupancy; // Station indices occupied by detectives
+	private final ImmutableSet<Move> singles;
+	private final Piece piece; // The piece making double moves, null if there are none
+	private final int pieceIndex, source, owned, pairs; // Pairs being tickets held twice or more
+	private final int[] firstEdges, firstTickets; // The first legs
+	private final int doubles; // Number of double moves
+
+	private MoveSet(CompiledGraph graph, long[] occupancy, ImmutableSet<Move> singles, Player mrX) {
+		this.graph = graph;
+		this.pool = MovePool.of(graph);
+		this.occupancy = occupancy;
+		this.singles = singles;
+		this.piece = mrX == null ? null : mrX.piece();
+		this.pieceIndex = mrX == null ? -1 : ALL_PIECES.indexOf(mrX.piece());
+		this.source = mrX == null ? -1 : graph.indexOf(mrX.location());
+		this.owned = mrX == null ? 0 : ticketMask(mrX, 1);
+		this.pairs = mrX == null ? 0 : ticketMask(mrX, 2);
+
+		int[] edges = new int[16], tickets = new int[16];
+		int legs = 0, count = 0;
+		if (mrX != null) {
+			for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+				if (occupied(graph.target(edge))) continue;
+				for (int mask = usable(edge, owned); mask != 0; mask &= mask - 1) {
+					if (legs == edges.length) {
+						edges = Arrays.copyOf(edges, legs * 2);
+						tickets = Arrays.copyOf(tickets, legs * 2);
+					}
+					edges[legs] = edge;
+					tickets[legs] = Integer.numberOfTrailingZeros(mask);
+					count += secondLegs(legs, edges, tickets);
+					legs++;
+				}
+			}
+		}
+		this.firstEdges = Arrays.copyOf(edges, legs);
+		this.firstTickets = Arrays.copyOf(tickets, legs);
+		this.doubles = count;
+	}
+
+	/**
+	 * @param graph the compiled graph of the game
+	 * @param movers the players whose moves are in the set
+	 * @param occupancy bitset of the station indices occupied by detectives, which must not change
+	 * while the set is in use
+	 * @param doubles whether movers holding a {@link Ticket#DOUBLE} ticket may make double moves
+	 * @return the moves of the players
+	 */
+	@Nonnull public static MoveSet of(@Nonnull CompiledGraph graph,
+	                                  @Nonnull Collection<Player> movers,
+	                                  @Nonnull long[] occupancy,
+	                                  boolean doubles) {
+		Objects.requireNonNull(graph);
+		if (occupancy.length != graph.words())
+			throw new IllegalArgumentException("Occupancy does not match the graph");
+		ImmutableSet.Builder<Move> singles = ImmutableSet.builder();
+		MoveSpliterator.of(graph, movers, occupancy, false).forEachRemaining(singles::add);
+		Player mrX = null;
+		for (Player player : movers) {
+			if (doubles && player.isMrX() && player.has(Ticket.DOUBLE)) mrX = player;
+		}
+		return new MoveSet(graph, occupancy, singles.build(), mrX);
+	}
+
+	/**
+	 * @param graph the compiled graph of the game
+	 * @param movers the players whose moves are in the set
+	 * @param detectives every detective, whose stations block moves
+	 * @param doubles whether movers holding a {@link Ticket#DOUBLE} ticket may make double moves
+	 * @return the moves of the players
+	 */
+	@Nonnull public static MoveSet of(@Nonnull CompiledGraph graph,
+	                                  @Nonnull Collection<Player> movers,
+	                                  @Nonnull Collection<Player> detectives,
+	                                  boolean doubles) {
+		long[] occupancy = new long[graph.words()];
+		for (Player detective : detectives) {
+			int index = graph.indexOf(detective.location());
+			occupancy[index >>> 6] |= 1L << index;
+		}
+		return of(graph, movers, occupancy, doubles);
+	}
+
+	private static int ticketMask(Player player, int atLeast) {
+		int mask = 0;
+		for (Ticket ticket : Ticket.values()) {
+			if (player.hasAtLeast(ticket, atLeast)) mask |= 1 << ticket.ordinal();
+		}
+		return mask;
+	}
+
+	private boolean occupied(int index) { return (occupancy[index >>> 6] & (1L << index)) != 0; }
+
+	// Tickets out of the mask that can be used along an edge
+	private int usable(int edge, int tickets) { return (graph.ticketMask(edge) | SECRET) & tickets; }
+
+	// Tickets that can be used for the second leg after the first used a ticket
+	private int secondTickets(int ticket1) {
+		return (pairs & (1 << ticket1)) != 0 ? owned : owned & ~(1 << ticket1);
+	}
+
+	private int secondLegs(int leg, int[] edges, int[] tickets) {
+		int middle = graph.target(edges[leg]);
+		int owned2 = secondTickets(tickets[leg]);
+		int count = 0;
+		for (int edge = graph.start(middle); edge < graph.end(middle); edge++) {
+			if (!occupied(graph.target(edge))) count += Integer.bitCount(usable(edge, owned2));
+		}
+		return count;
+	}
+
+	/**
+	 * @return the single moves in the set
+	 */
+	@Nonnull public ImmutableSet<Move> singleMoves() { return singles; }
+
+	/**
+	 * @return the number of double moves in the set
+	 */
+	public int doubleMoveCount() { return doubles; }
+
+	/**
+	 * @return the number of distinct first legs of the double moves, which with the second legs
+	 * reachable from each is all the set stores
+	 */
+	public int firstLegCount() { return firstEdges.length; }
+
+	@Override public int size() { return singles.size() + doubles; }
+
+	@Override public boolean isEmpty() { return singles.isEmpty() && doubles == 0; }
+
+	@Override public boolean contains(Object o) {
+		if (!(o instanceof DoubleMove)) return singles.contains(o);
+		DoubleMove move = (DoubleMove) o;
+		if (move.commencedBy() != piece || graph.index(move.source()) != source) return false;
+		int middle = graph.index(move.destination1);
+		int destination = graph.index(move.destination2);
+		if (middle == -1 || destination == -1 || occupied(middle) || occupied(destination)) return false;
+		int edge1 = graph.edge(source, middle);
+		int edge2 = graph.edge(middle, destination);
+		int ticket1 = 1 << move.ticket1.ordinal();
+		return edge1 != -1 && edge2 != -1
+				&& (usable(edge1, owned) & ticket1) != 0
+				&& (usable(edge2, secondTickets(move.ticket1.ordinal())) & (1 << move.ticket2.ordinal())) != 0;
+	}
+
+	@Nonnull @Override public Iterator<Move> iterator() {
+		return new AbstractIterator<>() {
+			private final Iterator<Move> single = singles.iterator();
+			private int leg = -1, edge, end, mask, owned2;
+
+			@Override protected Move computeNext() {
+				if (single.hasNext()) return single.next();
+				while (mask == 0) {
+					if (edge < end) {
+						int target = graph.target(edge);
+						mask = occupied(target) ? 0 : usable(edge, owned2);
+						if (mask == 0) edge++;
+						continue;
+					}
+					if (++leg >= firstEdges.length) return endOfData();
+					int middle = graph.target(firstEdges[leg]);
+					edge = graph.start(middle);
+					end = graph.end(middle);
+					owned2 = secondTickets(firstTickets[leg]);
+				}
+				int ticket2 = Integer.numberOfTrailingZeros(mask);
+				Move move = pool.doubleMove(pieceIndex, source, firstEdges[leg], firstTickets[leg], edge, ticket2);
+				mask &= mask - 1;
+				if (mask == 0) edge++;
+				return move;
+			}
+		};
+	}
+}
@@ -0,0 +1,235 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * Generates moves on demand instead of collecting them into a set first, for searches that only
+ * scan moves, sample one or stop at the first good one.
+ * <br>
+ * The work is divided into units of one edge leaving the station of a player to move: the single
+ * moves along that edge and, for Mr X, every double move whose first leg takes it. Moves of a
+ * unit are generated when the unit is reached, so stopping early skips the rest of the graph.
+ * Splitting divides the remaining units, so {@link Stream#parallel() parallel} streams share the
+ * work out across threads.
+ * <br>
+ * The spliterator is {@link #SIZED}; the exact number of moves is counted, without creating any
+ * moves, the first time a size is needed. Moves are interned by the graph's {@link MovePool}, and
+ * double moves are read from its {@link TwoHopTable}.
+ */
+public final class MoveSpliterator implements Spliterator<Move> {
+
+	private static final int TICKETS = Ticket.values().length;
+	private static final int SECRET = 1 << Ticket.SECRET.ordinal();
+
+	// What every spliterator split from the same root shares
+	private static final class Source {
+		final CompiledGraph graph;
+		final MovePool pool;
+		final TwoHopTable twoHops;
+		final long[] occupancy; // Station indices occupied by detectives
+		final int[] pieces, sources, owned, pairs; // Per mover, pairs being tickets held twice or more
+		final boolean[] doubles; // Per mover, whether it may make double moves
+		final int[] unitMovers, unitEdges; // Per unit
+		volatile int[] counts; // Number of moves before each unit, built on first use
+
+		Source(CompiledGraph graph, long[] occupancy, int[] pieces, int[] sources, int[] owned,
+		       int[] pairs, boolean[] doubles, int[] unitMovers, int[] unitEdges) {
+			this.graph = graph;
+			this.pool = MovePool.of(graph);
+			this.twoHops = TwoHopTable.of(graph);
+			this.occupancy = occupancy;
+			this.pieces = pieces;
+			this.sources = sources;
+			this.owned = owned;
+			this.pairs = pairs;
+			this.doubles = doubles;
+			this.unitMovers = unitMovers;
+			this.unitEdges = unitEdges;
+		}
+
+		boolean occupied(int index) { return (occupancy[index >>> 6] & (1L << index)) != 0; }
+
+		int[] counts() {
+			int[] result = counts;
+			if (result == null) {
+				result = new int[unitEdges.length + 1];
+				for (int unit = 0; unit < unitEdges.length; unit++) {
+					result[unit + 1] = result[unit] + generate(unit, null);
+				}
+				counts = result;
+			}
+			return result;
+		}
+
+		// Generates the moves of a unit into the buffer, or only counts them if it is null
+		int generate(int unit, Move[] buffer) {
+			int mover = unitMovers[unit], edge1 = unitEdges[unit];
+			int piece = pieces[mover], source = sources[mover], owned = this.owned[mover];
+			int middle = graph.target(edge1);
+			int count = 0;
+			int mask1 = (graph.ticketMask(edge1) | SECRET) & owned;
+			for (int mask = mask1; mask != 0; mask &= mask - 1) {
+				if (buffer != null) buffer[count] = pool.single(piece, source, edge1, Integer.numberOfTrailingZeros(mask));
+				count++;
+			}
+			if (!doubles[mover]) return count;
+			int pairs = this.pairs[mover];
+			for (int route : twoHops.routes(edge1)) {
+				int ticket1 = TwoHopTable.ticket1(route), ticket2 = TwoHopTable.ticket2(route);
+				if ((owned & 1 << ticket1) == 0 || (owned & 1 << ticket2) == 0) continue;
+				// The same ticket can only be used twice if there are two of them
+				if (ticket1 == ticket2 && (pairs & 1 << ticket1) == 0) continue;
+				int edge2 = TwoHopTable.edge2(route);
+				if (occupied(graph.target(edge2))) continue;
+				if (buffer != null) buffer[count] = pool.doubleMove(piece, source, edge1, ticket1, edge2, ticket2);
+				count++;
+			}
+			return count;
+		}
+
+		// An upper bound on the moves of a unit, for sizing buffers
+		int bound(int unit) {
+			return TICKETS + (doubles[unitMovers[unit]] ? twoHops.routes(unitEdges[unit]).length : 0);
+		}
+	}
+
+	private final Source source;
+	private int unit; // The next unit to generate
+	private final int end; // One past the last unit of this spliterator
+	private Move[] buffer = new Move[0]; // Moves of the last generated unit
+	private int index, size; // Position in and size of the buffer
+
+	private MoveSpliterator(Source source, int unit, int end) {
+		this.source = source;
+		this.unit = unit;
+		this.end = end;
+	}
+
+	/**
+	 * @param graph the compiled graph of the game
+	 * @param movers the players whose moves to generate
+	 * @param detectives every detective, whose stations block moves
+	 * @param doubles whether movers holding a {@link Ticket#DOUBLE} ticket may make double moves;
+	 * false for single moves only
+	 * @return the moves of the players
+	 */
+	@Nonnull public static MoveSpliterator of(@Nonnull CompiledGraph graph,
+	                                          @Nonnull Collection<Player> movers,
+	                                          @Nonnull Collection<Player> detectives,
+	                                          boolean doubles) {
+		long[] occupancy = new long[graph.words()];
+		for (Player detective : detectives) {
+			int index = graph.indexOf(detective.location());
+			occupancy[index >>> 6] |= 1L << index;
+		}
+		return of(graph, movers, occupancy, doubles);
+	}
+
+	/**
+	 * @param graph the compiled graph of the game
+	 * @param movers the players whose moves to generate
+	 * @param occupancy bitset of the station indices occupied by detectives, which must not change
+	 * while the moves are generated
+	 * @param doubles whether movers holding a {@link Ticket#DOUBLE} ticket may make double moves;
+	 * false for single moves only
+	 * @return the moves of the players
+	 */
+	@Nonnull public static MoveSpliterator of(@Nonnull CompiledGraph graph,
+	                                          @Nonnull Collection<Player> movers,
+	                                          @Nonnull long[] occupancy,
+	                                          boolean doubles) {
+		Objects.requireNonNull(graph);
+		if (occupancy.length != graph.words())
+			throw new IllegalArgumentException("Occupancy does not match the graph");
+		int count = movers.size();
+		int[] pieces = new int[count], sources = new int[count], owned = new int[count], pairs = new int[count];
+		boolean[] doubleMovers = new boolean[count];
+		int[] unitMovers = new int[16], unitEdges = new int[16];
+		int units = 0, mover = 0;
+		for (Player player : movers) {
+			int index = graph.indexOf(player.location());
+			pieces[mover] = ALL_PIECES.indexOf(player.piece());
+			sources[mover] = index;
+			for (Ticket ticket : Ticket.values()) {
+				if (player.has(ticket)) owned[mover] |= 1 << ticket.ordinal();
+				if (player.hasAtLeast(ticket, 2)) pairs[mover] |= 1 << ticket.ordinal();
+			}
+			doubleMovers[mover] = doubles && player.isMrX() && player.has(Ticket.DOUBLE);
+			for (int edge = graph.start(index); edge < graph.end(index); edge++) {
+				// Nothing can be reached through a blocked station
+				int target = graph.target(edge);
+				if ((occupancy[target >>> 6] & (1L << target)) != 0) continue;
+				if (units == unitEdges.length) {
+					unitMovers = Arrays.copyOf(unitMovers, units * 2);
+					unitEdges = Arrays.copyOf(unitEdges, units * 2);
+				}
+				unitMovers[units] = mover;
+				unitEdges[units++] = edge;
+			}
+			mover++;
+		}
+		return new MoveSpliterator(new Source(graph, occupancy, pieces, sources, owned, pairs, doubleMovers,
+				Arrays.copyOf(unitMovers, units), Arrays.copyOf(unitEdges, units)), 0, units);
+	}
+
+	/**
+	 * @return the moves as a sequential stream, see {@link Stream#parallel()}
+	 */
+	@Nonnull public Stream<Move> stream() { return StreamSupport.stream(this, false); }
+
+	private boolean fill() {
+		while (index == size) {
+			if (unit == end) return false;
+			int bound = source.bound(unit);
+			if (buffer.length < bound) buffer = new Move[Math.max(bound, buffer.length * 2)];
+			size = source.generate(unit++, buffer);
+			index = 0;
+		}
+		return true;
+	}
+
+	@Override public boolean tryAdvance(Consumer<? super Move> action) {
+		Objects.requireNonNull(action);
+		if (!fill()) return false;
+		action.accept(buffer[index++]);
+		return true;
+	}
+
+	@Override public void forEachRemaining(Consumer<? super Move> action) {
+		Objects.requireNonNull(action);
+		while (fill()) {
+			while (index < size) action.accept(buffer[index++]);
+		}
+	}
+
+	@Override public Spliterator<Move> trySplit() {
+		int middle = (unit + end) >>> 1;
+		if (middle <= unit) return null;
+		source.counts(); // Built before the halves can be handed to other threads
+		MoveSpliterator prefix = new MoveSpliterator(source, unit, middle);
+		unit = middle;
+		// Moves already generated stay with this spliterator
+		return prefix;
+	}
+
+	@Override public long estimateSize() {
+		int[] counts = source.counts();
+		return counts[end] - counts[unit] + (size - index);
+	}
+
+	@Override public int characteristics() {
+		return SIZED | SUBSIZED | DISTINCT | NONNULL | IMMUTABLE;
+	}
+}
@@ -0,0 +1,186 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * The stations Mr X could be at, as far as the detectives can tell.
+ * <br>
+ * The candidates start as {@link ScotlandYard#MRX_LOCATIONS}. Each hidden entry of the travel
+ * log moves them to every station one journey away with the entry's ticket, and each reveal
+ * replaces them with the revealed station. Stations occupied by detectives are removed, as Mr X
+ * cannot move onto a detective and a detective moving onto Mr X ends the game.
+ * <br>
+ * Candidates are a bitset over the station indices of the {@link CompiledGraph}, updated in place
+ * one log entry at a time. {@link #update(Board)} applies only the entries added since the last
+ * update, so an Ai or the UI can keep one instance for the whole game and update it every turn.
+ * <br>
+ * Detectives are only removed where they are when a board is seen, so updating after every move
+ * rules out more stations than updating once a round. Either way the candidates always contain
+ * Mr X's location. Instances are not thread safe.
+ */
+public final class MrXCandidates {
+
+	private final CompiledGraph graph;
+	private final long[] start; // The candidates before Mr X's first move
+	private final long[] bits;
+	private final long[] next; // Scratch space for expanding
+	private int applied; // Number of log entries applied
+
+	/**
+	 * @param graph the compiled graph of the game
+	 * @param start the stations Mr X could start at, stations not on the graph are ignored
+	 */
+	public MrXCandidates(@Nonnull CompiledGraph graph, @Nonnull Collection<Integer> start) {
+		this.graph = Objects.requireNonNull(graph);
+		this.start = new long[graph.words()];
+		for (int station : start) {
+			int index = graph.index(station);
+			if (index != -1) this.start[index >>> 6] |= 1L << index;
+		}
+		this.bits = this.start.clone();
+		this.next = new long[graph.words()];
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return candidates before Mr X's first move, starting from {@link ScotlandYard#MRX_LOCATIONS}
+	 */
+	@Nonnull public static MrXCandidates of(@Nonnull GameSetup setup) {
+		return new MrXCandidates(CompiledGraph.of(setup), ScotlandYard.MRX_LOCATIONS);
+	}
+
+	/**
+	 * @param board the board
+	 * @return the candidates for the board, starting from {@link ScotlandYard#MRX_LOCATIONS}
+	 */
+	@Nonnull public static MrXCandidates of(@Nonnull Board board) {
+		MrXCandidates candidates = of(board.getSetup());
+		candidates.update(board);
+		return candidates;
+	}
+
+	/**
+	 * Applies the log entries added since the last update, then removes the stations occupied by
+	 * detectives. The board must be from the same game as previous updates; a board with a
+	 * shorter log starts again from the start stations.
+	 *
+	 * @param board the board
+	 */
+	public void update(@Nonnull Board board) {
+		List<LogEntry> log = board.getMrXTravelLog();
+		if (log.size() < applied) reset();
+		for (int i = applied; i < log.size(); i++) apply(log.get(i));
+		for (Piece piece : board.getPlayers()) {
+			if (piece.isDetective()) {
+				board.getDetectiveLocation((Detective) piece).ifPresent(this::remove);
+			}
+		}
+	}
+
+	/**
+	 * Resets the candidates to the start stations
+	 */
+	public void reset() {
+		System.arraycopy(start, 0, bits, 0, bits.length);
+		applied = 0;
+	}
+
+	/**
+	 * Applies the next entry of the travel log
+	 *
+	 * @param entry the entry
+	 */
+	public void apply(@Nonnull LogEntry entry) {
+		applied++;
+		if (entry.location().isPresent()) {
+			Arrays.fill(bits, 0);
+			int index = graph.index(entry.location().get());
+			if (index != -1) bits[index >>> 6] |= 1L << index;
+			return;
+		}
+		Ticket ticket = entry.ticket();
+		Arrays.fill(next, 0);
+		for (int word = 0; word < bits.length; word++) {
+			for (long w = bits[word]; w != 0; w &= w - 1) {
+				int index = (word << 6) + Long.numberOfTrailingZeros(w);
+				for (int i = graph.start(ticket, index); i < graph.end(ticket, index); i++) {
+					int target = graph.target(ticket, i);
+					next[target >>> 6] |= 1L << target;
+				}
+			}
+		}
+		System.arraycopy(next, 0, bits, 0, bits.length);
+	}
+
+	/**
+	 * @param station the station Mr X is known not to be at, usually one a detective is on
+	 */
+	public void remove(int station) {
+		int index = graph.index(station);
+		if (index != -1) bits[index >>> 6] &= ~(1L << index);
+	}
+
+	/**
+	 * @return the number of log entries applied
+	 */
+	public int applied() { return applied; }
+	/**
+	 * @param station the station
+	 * @return whether Mr X could be at the station
+	 */
+	public boolean contains(int station) {
+		int index = graph.index(station);
+		return index != -1 && (bits[index >>> 6] & (1L << index)) != 0;
+	}
+	/**
+	 * @return the number of stations Mr X could be at
+	 */
+	public int size() {
+		int size = 0;
+		for (long word : bits) size += Long.bitCount(word);
+		return size;
+	}
+	/**
+	 * @return whether the log rules out every station, which only happens if Mr X did not start
+	 * at one of the start stations
+	 */
+	public boolean isEmpty() { return size() == 0; }
+	/**
+	 * @param word the index of the word, below {@link CompiledGraph#words()}
+	 * @return the candidates with station indices from {@code word * 64} as a bitset word
+	 */
+	public long word(int word) { return bits[word]; }
+	/**
+	 * @return the stations Mr X could be at, in ascending order
+	 */
+	@Nonnull public int[] toArray() {
+		int[] stations = new int[size()];
+		int i = 0;
+		for (int word = 0; word < bits.length; word++) {
+			for (long w = bits[word]; w != 0; w &= w - 1) {
+				stations[i++] = graph.node((word << 6) + Long.numberOfTrailingZeros(w));
+			}
+		}
+		return stations;
+	}
+	/**
+	 * @return the stations Mr X could be at, in ascending order
+	 */
+	@Nonnull public ImmutableSet<Integer> stations() {
+		ImmutableSet.Builder<Integer> stations = ImmutableSet.builder();
+		for (int station : toArray()) stations.add(station);
+		return stations.build();
+	}
+
+	@Override public String toString() { return "MrXCandidates" + stations(); }
+}
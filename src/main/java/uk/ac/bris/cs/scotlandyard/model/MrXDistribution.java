@@ -0,0 +1,293 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * How likely Mr X is to be at each station, as far as the detectives can tell.
+ * <br>
+ * The distribution starts uniform over {@link ScotlandYard#MRX_LOCATIONS}. Each hidden entry of
+ * the travel log spreads the probability of every station over the stations one journey away with
+ * the entry's ticket, weighed by a {@link MrXMovementModel}, and each reveal puts all of it on the
+ * revealed station. Stations occupied by detectives are given no probability. The support is the
+ * same as {@link MrXCandidates} updated with the same boards, or smaller where a double move would
+ * have passed through a detective.
+ * <br>
+ * Probabilities are kept over the station indices of the {@link CompiledGraph}: as a sparse list
+ * of stations while few stations are possible, as after a reveal, and as a dense array otherwise.
+ * {@link #sample(RandomGenerator)} draws a station in constant time from an alias table built
+ * once per update. {@link #update(Board)} applies only the entries added since the last update.
+ * Instances are not thread safe.
+ */
+public final class MrXDistribution {
+
+	private final CompiledGraph graph;
+	private final MrXMovementModel model;
+	private final int[] start; // Station indices Mr X could start at
+	private final long[] detectives;
+	private int applied; // Number of log entries applied
+
+	// Sparse: probabilities[k] is the probability of indices[k] for k < count
+	// Dense: probabilities[i] is the probability of station index i, count is the support size
+	private boolean dense;
+	private int count;
+	private final int[] indices;
+	private double[] probabilities;
+	private double[] next; // Scratch space for propagating, always dense
+	private double[] weights = new double[8]; // Scratch space for the weights of one station
+
+	// Alias table, built when first sampled after a change
+	private int[] outcomes;
+	private double[] thresholds;
+	private int[] aliases;
+
+	/**
+	 * @param graph the compiled graph of the game
+	 * @param model the model of how Mr X moves
+	 * @param start the stations Mr X could start at, all equally likely; stations not on the graph
+	 * are ignored
+	 */
+	public MrXDistribution(@Nonnull CompiledGraph graph,
+	                       @Nonnull MrXMovementModel model,
+	                       @Nonnull Collection<Integer> start) {
+		this.graph = Objects.requireNonNull(graph);
+		this.model = Objects.requireNonNull(model);
+		this.start = start.stream().mapToInt(graph::index).filter(i -> i != -1).distinct().sorted().toArray();
+		this.detectives = new long[graph.words()];
+		this.indices = new int[graph.size()];
+		this.probabilities = new double[graph.size()];
+		this.next = new double[graph.size()];
+		reset();
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param model the model of how Mr X moves
+	 * @return the distribution before Mr X's first move, uniform over
+	 * {@link ScotlandYard#MRX_LOCATIONS}
+	 */
+	@Nonnull public static MrXDistribution of(@Nonnull GameSetup setup, @Nonnull MrXMovementModel model) {
+		return new MrXDistribution(CompiledGraph.of(setup), model, ScotlandYard.MRX_LOCATIONS);
+	}
+
+	/**
+	 * @param board the board
+	 * @param model the model of how Mr X moves
+	 * @return the distribution for the board, starting from {@link ScotlandYard#MRX_LOCATIONS}
+	 */
+	@Nonnull public static MrXDistribution of(@Nonnull Board board, @Nonnull MrXMovementModel model) {
+		MrXDistribution distribution = of(board.getSetup(), model);
+		distribution.update(board);
+		return distribution;
+	}
+
+	/**
+	 * Applies the log entries added since the last update with the detectives where they are on
+	 * the board, then removes the stations occupied by detectives. The board must be from the same
+	 * game as previous updates; a board with a shorter log starts again from the start stations.
+	 *
+	 * @param board the board
+	 */
+	public void update(@Nonnull Board board) {
+		Arrays.fill(detectives, 0);
+		for (Piece piece : board.getPlayers()) {
+			if (piece.isDetective()) {
+				board.getDetectiveLocation((Detective) piece).ifPresent(station -> {
+					int index = graph.index(station);
+					if (index != -1) detectives[index >>> 6] |= 1L << index;
+				});
+			}
+		}
+		List<LogEntry> log = board.getMrXTravelLog();
+		if (log.size() < applied) reset();
+		for (int i = applied; i < log.size(); i++) apply(log.get(i));
+		// Copying into next and back clears the occupied stations and renormalises
+		Arrays.fill(next, 0);
+		for (int k = 0; k < length(); k++) {
+			int index = index(k);
+			if (!occupied(index)) next[index] = probabilities[k];
+		}
+		store();
+	}
+
+	/**
+	 * Resets the distribution to uniform over the start stations
+	 */
+	public void reset() {
+		Arrays.fill(next, 0);
+		for (int index : start) next[index] = 1;
+		store();
+		applied = 0;
+	}
+
+	private void apply(LogEntry entry) {
+		applied++;
+		Arrays.fill(next, 0);
+		if (entry.location().isPresent()) {
+			int index = graph.index(entry.location().get());
+			if (index != -1) next[index] = 1;
+			store();
+			return;
+		}
+		Ticket ticket = entry.ticket();
+		for (int k = 0; k < length(); k++) {
+			double probability = probabilities[k];
+			if (probability == 0) continue;
+			int source = index(k);
+			int from = graph.start(ticket, source), to = graph.end(ticket, source);
+			if (weights.length < to - from) weights = new double[to - from];
+			double total = 0;
+			for (int i = from; i < to; i++) {
+				int target = graph.target(ticket, i);
+				double weight = occupied(target) ? 0 : model.weight(graph, detectives, source, target);
+				weights[i - from] = weight;
+				total += weight;
+			}
+			// A station with every journey blocked could not have been Mr X's
+			if (total == 0) continue;
+			for (int i = from; i < to; i++) {
+				next[graph.target(ticket, i)] += probability * weights[i - from] / total;
+			}
+		}
+		store();
+	}
+
+	// Normalises next into the sparse or dense form, whichever suits its support
+	private void store() {
+		double total = 0;
+		int support = 0;
+		for (double probability : next) {
+			if (probability > 0) {
+				total += probability;
+				support++;
+			}
+		}
+		outcomes = null;
+		count = support;
+		dense = support > graph.size() / 8;
+		if (dense) {
+			for (int i = 0; i < next.length; i++) next[i] = next[i] > 0 ? next[i] / total : 0;
+			double[] swap = probabilities;
+			probabilities = next;
+			next = swap;
+		} else {
+			int k = 0;
+			for (int i = 0; i < next.length && k < support; i++) {
+				if (next[i] > 0) {
+					indices[k] = i;
+					probabilities[k++] = next[i] / total;
+				}
+			}
+		}
+	}
+
+	private int length() { return dense ? probabilities.length : count; }
+	private int index(int k) { return dense ? k : indices[k]; }
+	private boolean occupied(int index) { return (detectives[index >>> 6] & 1L << index) != 0; }
+
+	/**
+	 * Draws a station in proportion to its probability
+	 *
+	 * @param random the source of randomness
+	 * @return the station drawn
+	 * @throws IllegalStateException if no station is possible
+	 */
+	public int sample(@Nonnull RandomGenerator random) {
+		if (count == 0) throw new IllegalStateException("No station is possible");
+		if (outcomes == null) buildAliasTable();
+		int k = random.nextInt(outcomes.length);
+		return graph.node(random.nextDouble() < thresholds[k] ? outcomes[k] : aliases[k]);
+	}
+
+	// Vose's alias method, every column holds its own outcome below the threshold and the alias above
+	private void buildAliasTable() {
+		int n = count;
+		int[] outcomes = new int[n];
+		double[] thresholds = new double[n];
+		int[] aliases = new int[n];
+		int[] small = new int[n], large = new int[n];
+		int smalls = 0, larges = 0, k = 0;
+		for (int j = 0; j < length(); j++) {
+			if (probabilities[j] == 0) continue;
+			outcomes[k] = index(j);
+			thresholds[k] = probabilities[j] * n;
+			if (thresholds[k] < 1) small[smalls++] = k;
+			else large[larges++] = k;
+			k++;
+		}
+		while (smalls > 0 && larges > 0) {
+			int s = small[--smalls], l = large[--larges];
+			aliases[s] = outcomes[l];
+			thresholds[l] -= 1 - thresholds[s];
+			if (thresholds[l] < 1) small[smalls++] = l;
+			else large[larges++] = l;
+		}
+		// Whatever is left over is 1 up to rounding
+		while (larges > 0) thresholds[large[--larges]] = 1;
+		while (smalls > 0) thresholds[small[--smalls]] = 1;
+		this.thresholds = thresholds;
+		this.aliases = aliases;
+		this.outcomes = outcomes;
+	}
+
+	/**
+	 * @param station the station
+	 * @return the probability Mr X is at the station
+	 */
+	public double probability(int station) {
+		int index = graph.index(station);
+		if (index == -1) return 0;
+		if (dense) return probabilities[index];
+		int k = Arrays.binarySearch(indices, 0, count, index);
+		return k < 0 ? 0 : probabilities[k];
+	}
+	/**
+	 * @return the number of log entries applied
+	 */
+	public int applied() { return applied; }
+	/**
+	 * @return the number of stations Mr X could be at
+	 */
+	public int size() { return count; }
+	/**
+	 * @return whether no station is possible, which only happens if Mr X did not start at one of
+	 * the start stations
+	 */
+	public boolean isEmpty() { return count == 0; }
+	/**
+	 * @return whether the probabilities are stored densely
+	 */
+	public boolean isDense() { return dense; }
+	/**
+	 * @return the probabilities indexed by the station indices of the {@link CompiledGraph}, as a
+	 * new array
+	 */
+	@Nonnull public double[] toArray() {
+		if (dense) return probabilities.clone();
+		double[] result = new double[graph.size()];
+		for (int k = 0; k < count; k++) result[indices[k]] = probabilities[k];
+		return result;
+	}
+	/**
+	 * @return the stations Mr X could be at, in ascending order
+	 */
+	@Nonnull public ImmutableSet<Integer> stations() {
+		ImmutableSet.Builder<Integer> stations = ImmutableSet.builder();
+		for (int k = 0; k < length(); k++) {
+			if (probabilities[k] > 0) stations.add(graph.node(index(k)));
+		}
+		return stations.build();
+	}
+
+	@Override public String toString() { return "MrXDistribution" + stations(); }
+}
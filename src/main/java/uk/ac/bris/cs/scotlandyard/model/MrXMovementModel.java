@@ -0,0 +1,46 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import javax.annotation.Nonnull;
+
+/**
+ * How likely Mr X is to take each of the journeys open to him, used by {@link MrXDistribution} to
+ * spread the probability of each station over its neighbours.
+ * <br>
+ * Stations are station indices of the {@link CompiledGraph}. Only journeys to stations not
+ * occupied by a detective are weighed, and the weights of the journeys from a station are
+ * normalised, so a model only needs to say how likely each journey is relative to the others.
+ */
+@FunctionalInterface
+public interface MrXMovementModel {
+
+	/**
+	 * @param graph the compiled graph of the game
+	 * @param detectives the stations occupied by detectives, as a bitset over station indices
+	 * @param source the station Mr X moves from
+	 * @param target the station Mr X moves to
+	 * @return the relative weight of the journey, not negative
+	 */
+	double weight(@Nonnull CompiledGraph graph, @Nonnull long[] detectives, int source, int target);
+
+	/**
+	 * @return a model where every journey Mr X could take is equally likely
+	 */
+	@Nonnull static MrXMovementModel uniform() { return (graph, detectives, source, target) -> 1; }
+
+	/**
+	 * @param bias how strongly Mr X avoids detectives, 0 for not at all
+	 * @return a model where journeys to a station next to {@code n} detectives are weighed
+	 * {@code 1 / (1 + bias * n)}
+	 */
+	@Nonnull static MrXMovementModel awayFromDetectives(double bias) {
+		if (!(bias >= 0)) throw new IllegalArgumentException("Bias must not be negative: " + bias);
+		return (graph, detectives, source, target) -> {
+			int adjacent = 0;
+			for (int edge = graph.start(target); edge < graph.end(target); edge++) {
+				int station = graph.target(edge);
+				if ((detectives[station >>> 6] & 1L << station) != 0) adjacent++;
+			}
+			return 1 / (1 + bias * adjacent);
+		};
+	}
+}
@@ -1,6 +1,7 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 
@@ -9,14 +10,11 @@ import com.google.common.collect.ImmutableSet;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
-import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
 import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
-import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
 import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
 import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
-import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
 
 public final class MyGameStateFactory implements Factory<GameState> {
 
@@ -25,378 +23,374 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			GameSetup setup,
 			Player mrX,
 			ImmutableList<Player> detectives) {
-		return new MyGameState(setup, ImmutableSet.of(MrX.MRX), ImmutableList.of(), mrX, detectives);
+		// Verification to ensure parameters are valid, advance only makes valid states
+		if (setup.moves.isEmpty()) throw new IllegalArgumentException("Moves cannot be empty");
+		if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph cannot be empty");
+		if (mrX == null) throw new NullPointerException("Mr X cannot be null");
+		if (detectives.contains(null)) throw new NullPointerException("Detectives cannot contain null");
+
+		CompiledGraph graph = CompiledGraph.of(setup);
+		Player[] players = new Player[PIECES];
+		long[] occupancy = new long[graph.words()];
+		int detectiveTickets = 0;
+		for (Player player : detectives) {
+			if (player.piece().isMrX()) {
+				throw new IllegalArgumentException("There must only be one Mr X");
+			}
+			if (players[index(player.piece())] != null) {
+				throw new IllegalArgumentException("Detectives cannot have duplicate pieces");
+			}
+			int location = graph.indexOf(player.location());
+			if (occupied(occupancy, location)) {
+				throw new IllegalArgumentException("Multiple detectives cannot be at the same location");
+			}
+			if (player.has(Ticket.SECRET)) {
+				throw new IllegalArgumentException("Detectives cannot have secret tickets");
+			}
+			if (player.has(Ticket.DOUBLE)) {
+				throw new IllegalArgumentException("Detectives cannot have double tickets");
+			}
+			players[index(player.piece())] = player;
+			occupancy[location >>> 6] |= 1L << location;
+			for (Ticket ticket : Ticket.values()) detectiveTickets += player.count(ticket);
+		}
+		if (!mrX.isMrX()) throw new IllegalArgumentException("Mr X must be played by a Mr X piece");
+		players[MRX] = mrX;
+
+		// The players never change during a game, so the set is shared by every state
+		ImmutableSet.Builder<Piece> pieces = ImmutableSet.builder();
+		for (Player player : detectives) pieces.add(player.piece());
+		pieces.add(mrX.piece());
+
+		int remaining = 1 << MRX;
+		return new MyGameState(setup, graph, pieces.build(), remaining, TravelLog.empty(), players, occupancy,
+				Zobrist.of(mrX, detectives, ImmutableSet.of(mrX.piece()), ImmutableList.of()),
+				detectiveTickets, occupied(occupancy, graph.indexOf(mrX.location())));
+	}
+
+	// Players are indexed by their position in ScotlandYard.ALL_PIECES, Mr X first
+	private static final int PIECES = ScotlandYard.ALL_PIECES.size();
+	private static final int MRX = 0;
+
+	// Returns the index of a piece in ScotlandYard.ALL_PIECES without searching the list
+	private static int index(Piece piece) {
+		if (piece instanceof MrX) return MRX;
+		if (piece instanceof Detective) return ((Detective) piece).ordinal() + 1;
+		return -1;
+	}
+
+	private static boolean occupied(long[] occupancy, int index) {
+		return (occupancy[index >>> 6] & (1L << index)) != 0;
 	}
 
 	private static final class MyGameState implements GameState {
 
 		private final GameSetup setup; // Contains the graph and which moves reveal Mr X
-		private final ImmutableSet<Piece> remaining; // Players who have not yet moved in the current round
-		private final ImmutableList<LogEntry> log; // Mr X's travel log
-		private final Player mrX;
-		private final List<Player> detectives; // All detectives present in the game
-		private ImmutableSet<Piece> winner; // All winners at the end of the game
-
-		// Constructs a new GameState
+		private final CompiledGraph graph; // Shared compiled form of the setup's graph
+		private final ImmutableSet<Piece> pieces; // Every player's piece, shared by all states of a game
+		private final int remaining; // Bitmask of the player indices who have not yet moved in the current round
+		private final TravelLog log; // Mr X's travel log, sharing entries with earlier states
+		private final Player[] players; // Indexed by piece, null for pieces not in the game
+		private final long[] occupancy; // Bitset of the station indices occupied by detectives
+		private final long key; // Zobrist key, updated incrementally by advance
+		private final int detectiveTickets; // Total tickets held by detectives, updated by advance
+		private final boolean captured; // Whether a detective is on Mr X's station
+		// Computed lazily at most once per state and shared between threads. The results are
+		// immutable and deterministic, so a racing thread at worst computes the same value again.
+		private volatile ImmutableSet<Move> candidateMoves; // Moves available if nobody has won
+		private volatile MoveSet moveSet; // The same moves with double moves factored
+		private volatile ImmutableSet<Piece> winner; // All winners at the end of the game
+
+		// Constructs a new GameState, the factory has checked the players
 		private MyGameState(
-			final GameSetup setup, 
-			final ImmutableSet<Piece> remaining,
-			final ImmutableList<LogEntry> log, 
-			final Player mrX, 
-			final List<Player> detectives
+			final GameSetup setup,
+			final CompiledGraph graph,
+			final ImmutableSet<Piece> pieces,
+			final int remaining,
+			final TravelLog log,
+			final Player[] players,
+			final long[] occupancy,
+			final long key,
+			final int detectiveTickets,
+			final boolean captured
 		) {
-			// Verification to ensure parameters are valid
-			if (setup.moves.isEmpty()) throw new IllegalArgumentException("Moves cannot be empty");
-			if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph cannot be empty");
-			if (mrX == null) throw new NullPointerException("Mr X cannot be null");
-			if (detectives.contains(null)) throw new NullPointerException("Detectives cannot contain null");
-
-			List<Piece> pieces = new ArrayList<>(Collections.emptyList());
-			List<Integer> locations = new ArrayList<>(Collections.emptyList());
-
-			for (Player player : detectives) {
-				if (pieces.contains(player.piece())) {
-					throw new IllegalArgumentException("Detectives cannot have duplicate pieces");
-				} else {
-					pieces.add(player.piece());
-				}
-				
-				if (locations.contains(player.location())) {
-					throw new IllegalArgumentException("Multiple detectives cannot be at the same location");
-				} else { 
-					locations.add(player.location()); 
-				}
-				
-				if (player.has(Ticket.SECRET)) {
-					throw new IllegalArgumentException("Detectives cannot have secret tickets"); 
-				}
-
-				if (player.isDetective() && player.has(Ticket.DOUBLE)){
-					throw new IllegalArgumentException("Detectives cannot have double tickets");
-				}
-
-				if (player.piece().isMrX()) {
-					throw new IllegalArgumentException("There must only be one Mr X");
-				}
-			}
-
-			// Initialisation of values
 			this.setup = setup;
+			this.graph = graph;
+			this.pieces = pieces;
 			this.remaining = remaining;
 			this.log = log;
-			this.mrX = mrX;
-			this.detectives = detectives;
-			this.winner = ImmutableSet.of();
+			this.players = players;
+			this.occupancy = occupancy;
+			this.key = key;
+			this.detectiveTickets = detectiveTickets;
+			this.captured = captured;
 		}
 
 		// Returns the current GameSetup
 		@Nonnull @Override public GameSetup getSetup() { return setup; }
 
 		// Returns all players in the game
-		@Nonnull @Override public ImmutableSet<Piece> getPlayers() {
-			ImmutableSet.Builder<Piece> players = ImmutableSet.builder();
-			for (Player player : detectives) {
-				players.add(player.piece());
-			}
-			players.add(mrX.piece());
-			return players.build();
-		}
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() { return pieces; }
 
 		// Returns a new state from the current GameState after processing a provided move
 		@Nonnull @Override public GameState advance(Move move) {
 			// Verify that move is valid
-			if (!getAvailableMoves().contains(move)) throw new IllegalArgumentException("Illegal move: "+move);
-			
-			List<LogEntry> newLog = new ArrayList<>(log); // Updated version of Mr X's travel log
-			List<Player> newDetectives = new ArrayList<>(detectives); // Updated list of detectives with their altered attributes
-			Player newMrX = null; // Updated version of Mr X
+			if (!isAvailable(move)) throw new IllegalArgumentException("Illegal move: "+move);
+
+			int index = index(move.commencedBy());
+			Player player = players[index];
+			Player mrX = players[MRX];
+			Player[] newPlayers = players.clone(); // Updated players with their altered attributes
+			TravelLog newLog = log; // Updated version of Mr X's travel log
+			long[] newOccupancy = occupancy;
+			int newDetectiveTickets = detectiveTickets;
+			boolean newCaptured = false; // Mr X cannot move onto a detective
 
 			// Visitor Pattern used to access the destination of a move
 			FunctionalVisitor<Integer> v = new FunctionalVisitor<>(m -> m.destination, m -> m.destination2);
 			int destination = move.accept(v);
 
-			if (move.commencedBy().isMrX()) {
-				// Update Mr X's location and remove used tickets
-				newMrX = mrX.at(destination).use(move.tickets());
-
-				for (Ticket ticket : move.tickets()) {
-					if (ticket != Ticket.DOUBLE) {
-						// Update Mr X's travel log
-						if (setup.moves.get(newLog.size())) {
-							newLog.add(LogEntry.reveal(ticket, destination));
-						} else {
-							newLog.add(LogEntry.hidden(ticket));
-						}
-					}
-				}
+			// Update the player's location and remove used tickets
+			newPlayers[index] = player.at(destination).use(move.tickets());
+			long newKey = key ^ Zobrist.tickets(player, newPlayers[index]);
+
+			int newRemaining;
+			if (index == MRX) {
+				// Update Mr X's travel log, each leg is logged against the station it ended on
+				newLog = move.accept(new FunctionalVisitor<>(
+					m -> log.append(logEntry(m.ticket, m.destination, log.size())),
+					m -> log.append(logEntry(m.ticket1, m.destination1, log.size()))
+						.append(logEntry(m.ticket2, m.destination2, log.size() + 1))));
+				for (int i = log.size(); i < newLog.size(); i++) newKey ^= Zobrist.logEntry(i, newLog.get(i));
+
+				// Mr X moving always starts a new round even if some detectives were stuck and could not move
+				newRemaining = everyone();
 			} else {
-				for (Player det : detectives) {
-					if (det.piece() == move.commencedBy()) {
-						// Update detective's location and remove used tickets
-						Player newDet = det.at(destination).use(move.tickets());
-						newDetectives.set(detectives.indexOf(det), newDet);
-
-						// Give used ticket to Mr X
-						newMrX = mrX.give(move.tickets());
-					}
-				}
+				// Give used ticket to Mr X
+				newPlayers[MRX] = mrX.give(move.tickets());
+				newKey ^= Zobrist.location(index, player.location())
+					^ Zobrist.location(index, destination)
+					^ Zobrist.tickets(mrX, newPlayers[MRX]);
+				newDetectiveTickets--;
+				newCaptured = destination == mrX.location();
+
+				newOccupancy = occupancy.clone();
+				int from = graph.indexOf(player.location());
+				int to = graph.indexOf(destination);
+				newOccupancy[from >>> 6] &= ~(1L << from);
+				newOccupancy[to >>> 6] |= 1L << to;
+
+				// Reset remaining for the next round after everybody has moved
+				newRemaining = remaining & ~(1 << index);
+				if (newRemaining == 0) newRemaining = everyone();
 			}
 
-			// Update remaining to exclude who just moved and swap turns
-			Set<Piece> newRemaining = new HashSet<>(remaining);
-			newRemaining.remove(move.commencedBy());
-
-			// Reset remaining for the next round after everybody has moved
-			if (newRemaining.isEmpty()) {
-				newRemaining = getPlayers();
+			for (int mask = remaining ^ newRemaining; mask != 0; mask &= mask - 1) {
+				newKey ^= Zobrist.remaining(Integer.numberOfTrailingZeros(mask));
 			}
 
-			return new MyGameState(setup, ImmutableSet.copyOf(newRemaining), ImmutableList.copyOf(newLog), newMrX, ImmutableList.copyOf(newDetectives)); 
+			return new MyGameState(setup, graph, pieces, newRemaining, newLog, newPlayers, newOccupancy,
+					newKey, newDetectiveTickets, newCaptured);
 		}
 
-		// Returns the location of a given detective
-		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
-            for (Player player : detectives) {
-				if (
-					player.isDetective() && 
-					player.piece().equals(detective)
-				) { 
-					return Optional.of(player.location()); 
-				}
+		// Returns the bitmask of every player index
+		private int everyone() {
+			int everyone = 0;
+			for (int i = 0; i < PIECES; i++) {
+				if (players[i] != null) everyone |= 1 << i;
 			}
+			return everyone;
+		}
 
-			return Optional.empty();
+		// Checks whether a player is yet to move in the current round
+		private boolean isRemaining(int index) { return (remaining & (1 << index)) != 0; }
+
+		// Checks whether a move is in getAvailableMoves() without generating the moves
+		private boolean isAvailable(Move move) {
+			if (move == null || !getWinner().isEmpty()) return false;
+
+			// Verify that it is the turn of the player making the move
+			int index = index(move.commencedBy());
+			if (index == -1 || players[index] == null) return false;
+			if (index == MRX) {
+				// Mr X moves once every remaining detective has moved or is stuck
+				if (detectivesCanMove()) return false;
+			} else if (!isRemaining(index)) {
+				return false;
+			}
+			final Player mover = players[index];
+			if (move.source() != mover.location()) return false;
+
+			return move.accept(new FunctionalVisitor<>(
+				m -> mover.has(m.ticket) && canTravel(m.source(), m.ticket, m.destination),
+				m -> mover.isMrX()
+					&& mover.has(Ticket.DOUBLE)
+					&& setup.moves.size() - log.size() >= 2
+					&& mover.has(m.ticket1)
+					&& mover.has(m.ticket2)
+					&& (m.ticket1 != m.ticket2 || mover.hasAtLeast(m.ticket1, 2))
+					&& canTravel(m.source(), m.ticket1, m.destination1)
+					&& canTravel(m.destination1, m.ticket2, m.destination2)));
 		}
 
-		// Returns the tickets of a given player
-		@NonNull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
-			// referenced from ImmutableBoard.java : 79 on how to create a ticket board
-			if (piece.isDetective()) {
-				for (Player det : detectives) {
-					if (det.piece() == piece) {
-						return Optional.ofNullable(det.tickets())
-							.map(tickets -> ticket -> tickets.getOrDefault(ticket, 0));
-					}
+		// Checks whether a ticket can take a player between two stations that are not blocked
+		private boolean canTravel(int source, Ticket ticket, int destination) {
+			int from = graph.index(source);
+			int to = graph.index(destination);
+			if (from == -1 || to == -1 || occupied(occupancy, to)) return false;
+			int edge = graph.edge(from, to);
+			return edge != -1 && graph.canUse(edge, ticket);
+		}
+
+		// Checks whether any detective that has yet to move this round can make a move
+		private boolean detectivesCanMove() {
+			for (int i = MRX + 1; i < PIECES; i++) {
+				if (players[i] != null && isRemaining(i) && canMove(players[i])) return true;
+			}
+			return false;
+		}
+
+		// Checks whether a player can make at least one single move, stopping at the first one
+		private boolean canMove(Player player) {
+			int source = graph.indexOf(player.location());
+			for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+				// Ignore destinations blocked by detectives
+				if (occupied(occupancy, graph.target(edge))) continue;
+				for (Ticket ticket : Ticket.values()) {
+					if (player.has(ticket) && graph.canUse(edge, ticket)) return true;
 				}
-			} else if (piece.isMrX()) {
-				return Optional.ofNullable(mrX.tickets())
-					.map(tickets -> ticket -> tickets.getOrDefault(ticket, 0));
 			}
+			return false;
+		}
+
+		// Returns the log entry for a leg of Mr X's move, revealing his location if required
+		private LogEntry logEntry(Ticket ticket, int destination, int round) {
+			return setup.moves.get(round) ? LogEntry.reveal(ticket, destination) : LogEntry.hidden(ticket);
+		}
+
+		// Returns the location of a given detective
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			Player player = detective == null ? null : players[index(detective)];
+			return player == null ? Optional.empty() : Optional.of(player.location());
+		}
 
-			return Optional.empty();
+		// Returns the tickets of a given player, the ticket board is created once per player
+		@NonNull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			int index = piece == null ? -1 : index(piece);
+			if (index == -1 || players[index] == null) return Optional.empty();
+			return Optional.of(players[index].ticketBoard());
 		}
 
+		// Returns the Zobrist key kept up to date by advance
+		@Override public long getZobristKey() { return key; }
+
 		// Returns Mr X's travel log
 		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
-			return log; 
+			return log.asList();
 		}
 
 		// Returns all winners of the game
 		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
-			ImmutableSet<Move> availableMoves = getAvailableMoves(); // Available moves stored to prevent multiple calls
-			
-			// win is used to signify the winning state:
-			// 0 = No winner (returns empty set)
-			// 1 = Detectives win
-			// 2 = Mr X wins
-			
-			int win = 0;
-			
-			// A detective finishes a move on the same station as Mr X
-			for (Player det : detectives) {
-				if (det.location() == mrX.location()) {
-					win = 1;
-					break;
-				}
+			ImmutableSet<Piece> result = winner;
+			if (result == null) {
+				winner = result = computeWinner();
 			}
-			
-			// There are no unoccupied stations for Mr X to travel to
-			// Check if Mr X is unable to move before the last round
-			if (
-				log.size() < setup.moves.size() && 
-				remaining.contains(mrX.piece()) && 
-				availableMoves.isEmpty()
-			) {
-				win = 1;
-			} 
+			return result;
+		}
 
+		// Works out the winners of the game. Captures and ticket totals are tracked by advance,
+		// so only the probes for a first legal move are left, checked after the cheaper tests.
+		private ImmutableSet<Piece> computeWinner() {
 			// The detectives can no longer move any of their playing pieces : 1/2
-			// Check if detectives are able to make at least one move
-			boolean canMove = false;
-			for (Move move : availableMoves ) {
-				if (move.commencedBy().isDetective()) {
-					// Verify it is not the beginning of the round
-					if (remaining != getPlayers()) {
-						canMove = true;
-					}
-				}
-			}
-
-			// Mr X manages to fill the log and the detectives subsequently fail to catch him with their final moves
-			// Check if detectives cannot move, and it is the last round
-			if (!canMove && (log.size() == setup.moves.size())) {
-				win = 2;
-			}
-			
-			// The detectives can no longer move any of their playing pieces : 2/2
-			// Check if detectives have all ran out of tickets
-			boolean hasTicket = false;
-			for (Player det : detectives) {
-				for (Integer ticketCount : det.tickets().values()) {
-					if (ticketCount > 0) {
-						hasTicket = true;
-						break;
-					}
-				}
-			}
-			
 			// Mr X wins if detectives have no tickets
-			if (!hasTicket) {
-				win = 2;
-			}
+			Player mrX = players[MRX];
+			if (detectiveTickets == 0) return ImmutableSet.of(mrX.piece());
+
+			// Whether any detective can still move this round, otherwise Mr X is to move
+			boolean canMove = detectivesCanMove();
+			boolean logFull = log.size() == setup.moves.size();
 
-			HashSet<Piece> winners = new HashSet<>();
-			// Add detectives to winners if Mr X loses, or add Mr X to winners if detectives lose
-			if (win == 1) {
-				for (Player det : detectives) {
-					winners.add(det.piece());
+			// The detectives can no longer move any of their playing pieces : 2/2
+			// Mr X manages to fill the log and the detectives subsequently fail to catch him with their final moves
+			if (!canMove && logFull) return ImmutableSet.of(mrX.piece());
+
+			// A detective finishes a move on the same station as Mr X, or
+			// there are no unoccupied stations for Mr X to travel to before the last round
+			if (captured || (!logFull && isRemaining(MRX) && !canMove && !canMove(mrX))) {
+				ImmutableSet.Builder<Piece> winners = ImmutableSet.builder();
+				for (Piece piece : pieces) {
+					if (piece.isDetective()) winners.add(piece);
 				}
-			} else if (win == 2) {
-				winners.add(mrX.piece());
+				return winners.build();
 			}
-
-			// Update winners for access in getAvailableMoves()
-			winner = ImmutableSet.copyOf(winners);
-			return winner;
+			return ImmutableSet.of();
 		}
 
-		// Returns all moves players can make for a given GameState
+		// Returns all moves players can make for a given GameState, none once the game is over
 		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
-			HashSet<Move> allMoves = new HashSet<>();
-
-			// Return empty if the game is over
-			if(winner.isEmpty()) {
-				// Remaining detectives moves added
-				for (Player player : detectives) {
-					if (remaining.contains(player.piece())) {
-						allMoves.addAll(makeSingleMoves(setup, detectives, player));
-					}
-				}
-				// Mr X moves added if it's his move or if detectives have no moves
-				if ((remaining.contains(mrX.piece()) && remaining.size() == 1) || allMoves.isEmpty()) {
-					allMoves.addAll(makeSingleMoves(setup, detectives, mrX));
-					allMoves.addAll(makeDoubleMoves(setup, detectives, mrX));
-				}
-			}
-			return ImmutableSet.copyOf(allMoves);
+			return getWinner().isEmpty() ? getCandidateMoves() : ImmutableSet.of();
 		}
 
-		// Returns all single moves that can be played
-		private static Set<SingleMove> makeSingleMoves(GameSetup setup, List<Player> detectives, Player player) {
-			int source = player.location();
-			HashSet<SingleMove> moves = new HashSet<>();
-
-			// Detective locations stored for fast lookup
-			HashSet<Integer> detectiveLocations = new HashSet<>();
-			for (Player p : detectives) {
-				detectiveLocations.add(p.location());
+		// Returns all moves players could make if nobody has won yet
+		private ImmutableSet<Move> getCandidateMoves() {
+			ImmutableSet<Move> result = candidateMoves;
+			if (result == null) {
+				candidateMoves = result = makeCandidateMoves();
 			}
+			return result;
+		}
 
-			for (int destination : setup.graph.adjacentNodes(source)) {
-				// Ignore destinations blocked by detectives
-				if (detectiveLocations.contains(destination)) {
-					continue;
-				}
-
-				// Gets modes of transport to destination
-				Set<Transport> transportModes = Objects.requireNonNull(setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of()));
-
-				// Adds valid moves based on available tickets
-				for (Transport transport : transportModes) {
-					if (player.has(transport.requiredTicket())) {
-						moves.add(new SingleMove(player.piece(), source, transport.requiredTicket(), destination));
-					}
-				}
-
-				// Adds Mr X's secret moves if a secret ticket is held
-				if (player.isMrX() && player.has(Ticket.SECRET)) {
-					moves.add(new SingleMove(player.piece(), source, Ticket.SECRET, destination));
-				}
+		// Returns the moves as a set with the double moves factored into their legs
+		@Nonnull @Override public Set<Move> getAvailableMoveSet() {
+			if (!getWinner().isEmpty()) return ImmutableSet.of();
+			MoveSet result = moveSet;
+			if (result == null) {
+				moveSet = result = MoveSet.of(graph, movers(null), occupancy, doubleMovesAllowed(true));
 			}
-
-			return moves;
+			return result;
 		}
 
-		// Returns all doubles moves that can be played
-		private static Set<DoubleMove> makeDoubleMoves(GameSetup setup, List<Player> detectives, Player mrX) {
-			if (mrX.isDetective()) {
-				throw new IllegalArgumentException("Player is detective");
-			}
-			int source = mrX.location();
-			HashSet<DoubleMove> doubleMoves = new HashSet<>();
+		private ImmutableSet<Move> makeCandidateMoves() {
+			return ImmutableSet.copyOf(getAvailableMoveSet());
+		}
 
-			// Return an empty set if no double moves can exist
-			if (!mrX.has(Ticket.DOUBLE) || setup.moves.size() <= 1) {
-				return doubleMoves;
-			}
+		// Streams moves on demand, none once the game is over
+		@Nonnull @Override public Stream<Move> moves() { return streamMoves(null, true); }
 
-			// Detective locations stored for fast lookup
-			HashSet<Integer> detectiveLocations = new HashSet<>();
-			for (Player p : detectives) {
-				detectiveLocations.add(p.location());
-			}
+		@Nonnull @Override public Stream<Move> moves(@Nonnull Piece piece) {
+			return streamMoves(Objects.requireNonNull(piece), true);
+		}
 
-			for (int destination1 : setup.graph.adjacentNodes(source)) {
-				if (detectiveLocations.contains(destination1)) {
-					// Ignore destinations blocked by detectives
-					continue;
-				}
+		@Nonnull @Override public Stream<Move> singleMoves() { return streamMoves(null, false); }
 
-				// Get modes of transport to the first (intermediate) destination
-				Set<Transport> transportModes1 = Objects.requireNonNull(setup.graph.edgeValueOrDefault(source, destination1, ImmutableSet.of()));
+		private Stream<Move> streamMoves(Piece piece, boolean doubles) {
+			return getWinner().isEmpty() ? moveSpliterator(piece, doubles).stream() : Stream.empty();
+		}
 
-				for (Transport transport1 : transportModes1) {
-					if (!mrX.has(transport1.requiredTicket())) {
-						continue;
-					}
+		// Generates the moves of a piece, or of every player to move if it is null
+		private MoveSpliterator moveSpliterator(Piece piece, boolean doubles) {
+			return MoveSpliterator.of(graph, movers(piece), occupancy, doubleMovesAllowed(doubles));
+		}
 
-					for (int destination2 : setup.graph.adjacentNodes(destination1)) {
-						if (detectiveLocations.contains(destination2)) {
-							continue;
-						}
-
-						// Get modes of transport to the second (final) destination
-						Set<Transport> transportModes2 = Objects.requireNonNull(setup.graph.edgeValueOrDefault(destination1, destination2, ImmutableSet.of()));
-
-						for (Transport transport2 : transportModes2) {
-							Ticket ticket1 = transport1.requiredTicket();
-							Ticket ticket2 = transport2.requiredTicket();
-
-							// Verify that Mr X has enough tickets to perform the double move
-							if (!(ticket1 == ticket2 && Objects.requireNonNull(mrX.tickets().get(ticket1)) <= 1)) {
-								doubleMoves.add(new DoubleMove(mrX.piece(), source, ticket1, destination1, ticket2, destination2));
-							}
-
-							// Handle secret ticket scenarios
-							if (mrX.has(Ticket.SECRET)) {
-								// Using secret ticket as the first ticket
-								doubleMoves.add(new DoubleMove(mrX.piece(), source, Ticket.SECRET, destination1, ticket2, destination2));
-
-								if (mrX.has(ticket2)) {
-									// Using secret ticket as the second ticket
-									doubleMoves.add(new DoubleMove(mrX.piece(), source, ticket1, destination1, Ticket.SECRET, destination2));
-								}
-
-								if (Objects.requireNonNull(mrX.tickets().get(Ticket.SECRET)) >= 2) {
-									// Using secret ticket as both ticket
-									doubleMoves.add(new DoubleMove(mrX.piece(), source, Ticket.SECRET, destination1, Ticket.SECRET, destination2));
-								}
-							}
-						}
+		// Returns the players of the given piece, or all players, that are to move now
+		private List<Player> movers(Piece piece) {
+			List<Player> movers = new ArrayList<>();
+			// Remaining detectives move first, Mr X moves if none of them can
+			if (detectivesCanMove()) {
+				for (int i = MRX + 1; i < PIECES; i++) {
+					if (players[i] != null && isRemaining(i) && (piece == null || players[i].piece() == piece)) {
+						movers.add(players[i]);
 					}
 				}
+			} else if (piece == null || piece.isMrX()) {
+				movers.add(players[MRX]);
 			}
-			return doubleMoves;
+			return movers;
+		}
+
+		// Both legs of a double move need a slot in the log
+		private boolean doubleMovesAllowed(boolean doubles) {
+			return doubles && setup.moves.size() - log.size() >= 2;
 		}
 	}
-}
\ No newline at end of file
+}
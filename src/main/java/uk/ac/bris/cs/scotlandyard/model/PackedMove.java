@@ -0,0 +1,158 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * Moves packed into a single {@code long} so searches can store and compare them without
+ * allocating. Packing is lossless, {@code unpack(pack(move)).equals(move)} for every move with
+ * stations between 0 and {@value #MAX_STATION}.
+ * <br>
+ * Layout, from the least significant bit:
+ * <pre>
+ *  0 -  2 piece, index in {@link ScotlandYard#ALL_PIECES}
+ *       3 set for double moves
+ *  4 - 19 source station
+ * 20 - 22 first ticket ordinal
+ * 23 - 38 first destination
+ * 39 - 41 second ticket ordinal, zero for single moves
+ * 42 - 57 second destination, zero for single moves
+ *      63 always set
+ * </pre>
+ * A packed move is never zero, so zero can be used as "no move".
+ */
+public final class PackedMove {
+
+	/**
+	 * The largest station that can be packed
+	 */
+	public static final int MAX_STATION = 0xffff;
+
+	private static final int DOUBLE_BIT = 3;
+	private static final int SOURCE = 4, TICKET1 = 20, DESTINATION1 = 23, TICKET2 = 39, DESTINATION2 = 42;
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final Piece[] PIECES = ALL_PIECES.toArray(new Piece[0]);
+
+	private PackedMove() {}
+
+	private static long station(int station) {
+		if (station < 0 || station > MAX_STATION)
+			throw new IllegalArgumentException("Station " + station + " cannot be packed");
+		return station;
+	}
+
+	/**
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the source station
+	 * @param ticket the ticket ordinal
+	 * @param destination the destination station
+	 * @return the packed single move
+	 */
+	public static long single(int piece, int source, int ticket, int destination) {
+		return piece | station(source) << SOURCE | (long) ticket << TICKET1
+				| station(destination) << DESTINATION1 | 1L << 63;
+	}
+
+	/**
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the source station
+	 * @param ticket1 the first ticket ordinal
+	 * @param destination1 the first destination
+	 * @param ticket2 the second ticket ordinal
+	 * @param destination2 the second destination
+	 * @return the packed double move
+	 */
+	public static long doubleMove(int piece, int source, int ticket1, int destination1,
+	                              int ticket2, int destination2) {
+		return single(piece, source, ticket1, destination1) | 1L << DOUBLE_BIT
+				| (long) ticket2 << TICKET2 | station(destination2) << DESTINATION2;
+	}
+
+	/**
+	 * @param move the move
+	 * @return the packed move
+	 */
+	public static long pack(@Nonnull Move move) {
+		int piece = ALL_PIECES.indexOf(move.commencedBy());
+		if (move instanceof SingleMove) {
+			SingleMove m = (SingleMove) move;
+			return single(piece, m.source(), m.ticket.ordinal(), m.destination);
+		}
+		DoubleMove m = (DoubleMove) move;
+		return doubleMove(piece, m.source(), m.ticket1.ordinal(), m.destination1,
+				m.ticket2.ordinal(), m.destination2);
+	}
+
+	/**
+	 * @param move the packed move
+	 * @return the move
+	 */
+	@Nonnull public static Move unpack(long move) {
+		if (isDouble(move)) return new DoubleMove(piece(move), source(move),
+				ticket1(move), destination1(move), ticket2(move), destination2(move));
+		return new SingleMove(piece(move), source(move), ticket1(move), destination1(move));
+	}
+
+	/**
+	 * @param move the packed move
+	 * @return the index of the piece making the move in {@link ScotlandYard#ALL_PIECES}
+	 */
+	public static int pieceIndex(long move) { return (int) (move & 7); }
+	/**
+	 * @param move the packed move
+	 * @return the piece making the move
+	 */
+	@Nonnull public static Piece piece(long move) { return PIECES[pieceIndex(move)]; }
+	/**
+	 * @param move the packed move
+	 * @return whether the move is a double move
+	 */
+	public static boolean isDouble(long move) { return (move & 1L << DOUBLE_BIT) != 0; }
+	/**
+	 * @param move the packed move
+	 * @return the source station
+	 */
+	public static int source(long move) { return (int) (move >>> SOURCE) & MAX_STATION; }
+	/**
+	 * @param move the packed move
+	 * @return the ordinal of the (first) ticket
+	 */
+	public static int ticket1Ordinal(long move) { return (int) (move >>> TICKET1) & 7; }
+	/**
+	 * @param move the packed move
+	 * @return the (first) ticket
+	 */
+	@Nonnull public static Ticket ticket1(long move) { return TICKETS[ticket1Ordinal(move)]; }
+	/**
+	 * @param move the packed move
+	 * @return the (first) destination
+	 */
+	public static int destination1(long move) { return (int) (move >>> DESTINATION1) & MAX_STATION; }
+	/**
+	 * @param move the packed double move
+	 * @return the ordinal of the second ticket
+	 */
+	public static int ticket2Ordinal(long move) { return (int) (move >>> TICKET2) & 7; }
+	/**
+	 * @param move the packed double move
+	 * @return the second ticket
+	 */
+	@Nonnull public static Ticket ticket2(long move) { return TICKETS[ticket2Ordinal(move)]; }
+	/**
+	 * @param move the packed double move
+	 * @return the second destination
+	 */
+	public static int destination2(long move) { return (int) (move >>> DESTINATION2) & MAX_STATION; }
+	/**
+	 * @param move the packed move
+	 * @return where the move finishes
+	 */
+	public static int destination(long move) {
+		return isDouble(move) ? destination2(move) : destination1(move);
+	}
+}
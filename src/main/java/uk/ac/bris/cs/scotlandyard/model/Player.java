@@ -2,7 +2,6 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableMap;
 
-import java.util.HashMap;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
@@ -14,17 +13,44 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
  * Each player contains the {@link Piece} (coloured counter), {@link Ticket}s, and the location.
  */
 public final class Player {
+	// Ticket counts are packed a byte per ticket ordinal, the bits above them mark which tickets
+	// the player was given at all. give only adds to tickets the player was given.
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int PRESENT = 8 * TICKETS.length;
+	private static final int MAX_COUNT = 0xff;
+
 	private final Piece piece;
-	private final ImmutableMap<Ticket, Integer> tickets;
+	private final long tickets;
 	private final int location;
+	private volatile ImmutableMap<Ticket, Integer> ticketMap; // Built from tickets when first asked for
+	private volatile Board.TicketBoard ticketBoard; // Created when first asked for
 
 	public Player(@Nonnull Piece piece,
 	              @Nonnull ImmutableMap<Ticket, Integer> tickets,
 	              int location) {
+		this(piece, pack(Objects.requireNonNull(tickets)), location);
+		this.ticketMap = tickets;
+	}
+
+	private Player(Piece piece, long tickets, int location) {
 		this.piece = Objects.requireNonNull(piece);
-		this.tickets = Objects.requireNonNull(tickets);
+		this.tickets = tickets;
 		this.location = location;
 	}
+
+	private static long pack(ImmutableMap<Ticket, Integer> tickets) {
+		long packed = 0;
+		for (var entry : tickets.entrySet()) {
+			int count = Objects.requireNonNull(entry.getValue());
+			if (count < 0 || count > MAX_COUNT)
+				throw new IllegalArgumentException(entry.getKey() + " count must be between 0 and "
+						+ MAX_COUNT + ", got " + count);
+			int ordinal = entry.getKey().ordinal();
+			packed |= (long) count << (8 * ordinal) | 1L << (PRESENT + ordinal);
+		}
+		return packed;
+	}
+
 	/**
 	 * @return the piece
 	 */
@@ -40,7 +66,33 @@ public final class Player {
 	/**
 	 * @return the ticket
 	 */
-	@Nonnull public ImmutableMap<Ticket, Integer> tickets() { return tickets; }
+	@Nonnull public ImmutableMap<Ticket, Integer> tickets() {
+		ImmutableMap<Ticket, Integer> map = ticketMap;
+		if (map == null) {
+			ImmutableMap.Builder<Ticket, Integer> builder = ImmutableMap.builder();
+			for (Ticket ticket : TICKETS) {
+				if ((tickets & 1L << (PRESENT + ticket.ordinal())) != 0) builder.put(ticket, count(ticket));
+			}
+			ticketMap = map = builder.build();
+		}
+		return map;
+	}
+	/**
+	 * @param ticket the ticket
+	 * @return the number of the given ticket held; 0 if the player has none
+	 */
+	public int count(@Nonnull Ticket ticket) {
+		return (int) (tickets >>> (8 * ticket.ordinal())) & MAX_COUNT;
+	}
+	/**
+	 * @return a read-only view of the ticket counts, created once and shared by every player with
+	 * the same tickets made from this one by {@link #at(int)}
+	 */
+	@Nonnull public Board.TicketBoard ticketBoard() {
+		Board.TicketBoard board = ticketBoard;
+		if (board == null) ticketBoard = board = this::count;
+		return board;
+	}
 	/**
 	 * @return the location
 	 */
@@ -50,7 +102,7 @@ public final class Player {
 	 * @return whether the player has the given ticket
 	 */
 	public boolean has(@Nonnull Ticket ticket) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) != 0;
+		return count(Objects.requireNonNull(ticket)) != 0;
 	}
 	/**
 	 * @param ticket the ticket
@@ -58,7 +110,7 @@ public final class Player {
 	 * @return whether the player has &gt;= the required numbers of the given ticket
 	 */
 	public boolean hasAtLeast(@Nonnull Ticket ticket, int count) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) >= count;
+		return count(Objects.requireNonNull(ticket)) >= count;
 	}
 	/**
 	 * See {@link #give(Ticket)}
@@ -67,18 +119,24 @@ public final class Player {
 	 * @return a new player with one more of the given tickets
 	 */
 	@Nonnull public Player give(@Nonnull Iterable<Ticket> tickets) {
-		var x = this;
-		for (Ticket t : tickets) x = x.give(t);
-		return x;
+		long packed = this.tickets;
+		for (Ticket t : tickets) packed = give(packed, t);
+		return packed == this.tickets ? this : new Player(piece, packed, location);
 	}
 	/**
 	 * @param ticket the ticket
 	 * @return a new player with one more of the given ticket
 	 */
 	@Nonnull public Player give(@Nonnull Ticket ticket) {
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n + 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		long packed = give(tickets, ticket);
+		return packed == tickets ? this : new Player(piece, packed, location);
+	}
+	private static long give(long packed, Ticket ticket) {
+		int ordinal = ticket.ordinal();
+		if ((packed & 1L << (PRESENT + ordinal)) == 0) return packed;
+		if (((packed >>> (8 * ordinal)) & MAX_COUNT) == MAX_COUNT)
+			throw new IllegalArgumentException("Cannot hold more than " + MAX_COUNT + " " + ticket);
+		return packed + (1L << (8 * ordinal));
 	}
 	/**
 	 * See {@link #use(Ticket)}
@@ -87,33 +145,39 @@ public final class Player {
 	 * @return a new player with one less of the given tickets
 	 */
 	@Nonnull public Player use(@Nonnull Iterable<Ticket> tickets) {
-		var x = this;
-		for (Ticket t : tickets) x = x.use(t);
-		return x;
+		long packed = this.tickets;
+		for (Ticket t : tickets) packed = use(packed, t);
+		return new Player(piece, packed, location);
 	}
 	/**
 	 * @param ticket the ticket
 	 * @return a new player with one less of the given ticket
 	 */
 	@Nonnull public Player use(@Nonnull Ticket ticket) {
-		if (!has(ticket))
+		return new Player(piece, use(tickets, ticket), location);
+	}
+	private static long use(long packed, Ticket ticket) {
+		int ordinal = ticket.ordinal();
+		if (((packed >>> (8 * ordinal)) & MAX_COUNT) == 0)
 			throw new IllegalArgumentException("No " + ticket + " remaining");
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n - 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		return packed - (1L << (8 * ordinal));
 	}
 	/**
 	 * @param newLocation the location
 	 * @return a new player at the given location
 	 */
-	@Nonnull public Player at(int newLocation) { return new Player(piece, tickets, newLocation); }
+	@Nonnull public Player at(int newLocation) {
+		Player player = new Player(piece, tickets, newLocation);
+		player.ticketMap = ticketMap;
+		player.ticketBoard = ticketBoard;
+		return player;
+	}
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		Player that = (Player) o;
-		return location == that.location && piece == that.piece &&
-				Objects.equals(tickets, that.tickets);
+		return location == that.location && piece == that.piece && tickets == that.tickets;
 	}
 	@Override public int hashCode() { return Objects.hash(piece, tickets, location); }
-	@Override public String toString() { return piece + "@" + location + "(" + tickets + ")"; }
+	@Override public String toString() { return piece + "@" + location + "(" + tickets() + ")"; }
 }
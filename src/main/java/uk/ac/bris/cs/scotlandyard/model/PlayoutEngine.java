@@ -0,0 +1,325 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Finishes games with uniformly random moves, for Monte Carlo evaluation.
+ * <br>
+ * A playout copies a {@link SearchState} into flat arrays and plays forwards only, so there is
+ * nothing to undo and nothing is allocated. Each move is drawn uniformly from the moves
+ * {@link Board#getAvailableMoves()} would return, without listing them: the moves are counted
+ * per edge and ticket, then the count is walked again to the drawn one. Mr X's double moves are
+ * counted per first leg from the number of usable second legs of each ticket, so they are never
+ * enumerated. The winner is decided from counters kept as the game goes, with the same precedence
+ * as {@link Board#getWinner()}.
+ * <br>
+ * Instances are not thread safe, use one per thread with a random generator from
+ * {@link SplittableRandom#split()}. The engine keeps the number of plies and games it has played
+ * and the time spent, see {@link #pliesPerSecond()} and {@link #gamesPerSecond()}.
+ */
+public final class PlayoutEngine {
+
+	private static final int TICKETS = Ticket.values().length;
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final int SECRET = Ticket.SECRET.ordinal();
+	private static final int NONE = 0, MRX_WINS = 1, DETECTIVES_WIN = 2;
+
+	private final SplittableRandom random;
+
+	private CompiledGraph graph;
+	private boolean[] reveals = new boolean[0];
+	private int slots;
+	private final int[] pieceIndices = new int[ScotlandYard.ALL_PIECES.size()];
+	private final int[] locations = new int[ScotlandYard.ALL_PIECES.size()]; // Station indices
+	private final int[] tickets = new int[ScotlandYard.ALL_PIECES.size() * TICKETS];
+	private final int[] counts = new int[ScotlandYard.ALL_PIECES.size()]; // Moves of each detective
+	private final int[] secondLegs = new int[TICKETS]; // Usable second legs of each ticket
+	private long[] occupied = new long[0]; // Station indices occupied by detectives
+	private int everyone;
+	private int remaining;
+	private int logSize;
+	private int detectiveTickets;
+	private boolean captured;
+	private int winner;
+
+	private long plies, games, nanos;
+
+	/**
+	 * @param seed the seed of the random moves
+	 */
+	public PlayoutEngine(long seed) { this(new SplittableRandom(seed)); }
+
+	/**
+	 * @param random the source of the random moves, used by this engine only
+	 */
+	public PlayoutEngine(@Nonnull SplittableRandom random) { this.random = Objects.requireNonNull(random); }
+
+	/**
+	 * Plays random moves from a state until the game is over. The state is not changed.
+	 *
+	 * @param state the state to start from
+	 * @return whether Mr X wins
+	 */
+	public boolean play(@Nonnull SearchState state) {
+		long start = System.nanoTime();
+		load(state);
+		int moves = 0;
+		while (step() != 0) moves++;
+		nanos += System.nanoTime() - start;
+		plies += moves;
+		games++;
+		return winner == MRX_WINS;
+	}
+
+	/**
+	 * Plays random moves from a board until the game is over, see {@link #play(SearchState)}
+	 *
+	 * @param board the board to start from
+	 * @param mrXLocation Mr X's location, which the board does not reveal
+	 * @return whether Mr X wins
+	 */
+	public boolean play(@Nonnull Board board, int mrXLocation) {
+		return play(SearchState.of(board, mrXLocation));
+	}
+
+	// Copies the state into the engine
+	void load(SearchState state) {
+		if (graph != state.graph()) {
+			graph = state.graph();
+			occupied = new long[graph.words()];
+		} else Arrays.fill(occupied, 0);
+		if (reveals.length != state.getSetup().moves.size()) reveals = new boolean[state.getSetup().moves.size()];
+		for (int i = 0; i < reveals.length; i++) reveals[i] = state.getSetup().moves.get(i);
+		slots = state.slots();
+		everyone = (1 << slots) - 1;
+		remaining = 0;
+		detectiveTickets = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			pieceIndices[slot] = state.pieceIndex(slot);
+			locations[slot] = graph.indexOf(state.location(slot));
+			if (state.isRemaining(slot)) remaining |= 1 << slot;
+			for (Ticket ticket : Ticket.values()) {
+				int count = state.tickets(slot, ticket);
+				tickets[slot * TICKETS + ticket.ordinal()] = count;
+				if (slot != 0) detectiveTickets += count;
+			}
+			if (slot != 0) occupied[locations[slot] >>> 6] |= 1L << locations[slot];
+		}
+		logSize = state.logSize();
+		captured = isOccupied(locations[0]);
+		winner = NONE;
+	}
+
+	/**
+	 * Makes one random move, or decides the winner if there are none.
+	 *
+	 * @return the {@link PackedMove packed move} made, 0 if the game is over
+	 */
+	long step() {
+		if (winner != NONE) return 0;
+		// The detectives have run out of tickets
+		if (detectiveTickets == 0) return over(MRX_WINS);
+		int total = 0;
+		for (int slot = 1; slot < slots; slot++) {
+			counts[slot] = (remaining & 1 << slot) != 0 ? countSingles(slot) : 0;
+			total += counts[slot];
+		}
+		boolean logFull = logSize == reveals.length;
+		// Mr X filled the log and the detectives have made their final moves
+		if (total == 0 && logFull) return over(MRX_WINS);
+		// A detective is on Mr X's station
+		if (captured) return over(DETECTIVES_WIN);
+		if (total > 0) {
+			int r = random.nextInt(total);
+			int slot = 1;
+			while (r >= counts[slot]) r -= counts[slot++];
+			return single(slot, r);
+		}
+		int singles = countSingles(0);
+		int doubles = tickets[DOUBLE] > 0 && reveals.length - logSize >= 2 ? countDoubles() : 0;
+		// Nobody can move, Mr X is cornered
+		if (singles == 0) return over(DETECTIVES_WIN);
+		int r = random.nextInt(singles + doubles);
+		return r < singles ? single(0, r) : doubleMove(r - singles);
+	}
+
+	private long over(int winner) {
+		this.winner = winner;
+		return 0;
+	}
+
+	private boolean isOccupied(int index) { return (occupied[index >>> 6] & 1L << index) != 0; }
+
+	// Mask of ticket ordinals held by the player in a slot
+	private int owned(int slot) {
+		int owned = 0;
+		for (int ticket = 0; ticket < TICKETS; ticket++) {
+			if (tickets[slot * TICKETS + ticket] > 0) owned |= 1 << ticket;
+		}
+		return owned;
+	}
+
+	// Mask of ticket ordinals usable along an edge by the player in a slot holding the owned tickets
+	private int usable(int slot, int edge, int owned) {
+		int mask = slot == 0 ? graph.ticketMask(edge) | (1 << SECRET) : graph.ticketMask(edge);
+		return mask & owned;
+	}
+
+	private int countSingles(int slot) {
+		int source = locations[slot];
+		int owned = owned(slot);
+		int count = 0;
+		for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+			if (!isOccupied(graph.target(edge))) count += Integer.bitCount(usable(slot, edge, owned));
+		}
+		return count;
+	}
+
+	// Makes the single move with the given rank among the player's single moves
+	private long single(int slot, int rank) {
+		int source = locations[slot];
+		int owned = owned(slot);
+		for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+			int destination = graph.target(edge);
+			if (isOccupied(destination)) continue;
+			for (int mask = usable(slot, edge, owned); mask != 0; mask &= mask - 1) {
+				if (rank-- == 0) {
+					int ticket = Integer.numberOfTrailingZeros(mask);
+					if (slot == 0) moveMrX(ticket, destination);
+					else moveDetective(slot, ticket, destination);
+					return PackedMove.single(pieceIndices[slot], graph.node(source), ticket, graph.node(destination));
+				}
+			}
+		}
+		throw new AssertionError("Move " + rank + " out of range");
+	}
+
+	// Counts Mr X's second legs from a station for each ticket, ignoring how many he holds
+	private void countSecondLegs(int middle) {
+		Arrays.fill(secondLegs, 0);
+		for (int edge = graph.start(middle); edge < graph.end(middle); edge++) {
+			if (isOccupied(graph.target(edge))) continue;
+			for (int mask = graph.ticketMask(edge) | (1 << SECRET); mask != 0; mask &= mask - 1) {
+				secondLegs[Integer.numberOfTrailingZeros(mask)]++;
+			}
+		}
+	}
+
+	// Mask of tickets Mr X can use for the second leg after using ticket1 for the first
+	private int ownedAfter(int owned, int ticket1) {
+		return tickets[ticket1] >= 2 ? owned : owned & ~(1 << ticket1);
+	}
+
+	private int sum(int mask) {
+		int sum = 0;
+		for (; mask != 0; mask &= mask - 1) sum += secondLegs[Integer.numberOfTrailingZeros(mask)];
+		return sum;
+	}
+
+	private int countDoubles() {
+		int source = locations[0];
+		int owned = owned(0);
+		int count = 0;
+		for (int edge1 = graph.start(source); edge1 < graph.end(source); edge1++) {
+			int middle = graph.target(edge1);
+			int mask1 = usable(0, edge1, owned);
+			if (isOccupied(middle) || mask1 == 0) continue;
+			countSecondLegs(middle);
+			for (; mask1 != 0; mask1 &= mask1 - 1) {
+				count += sum(ownedAfter(owned, Integer.numberOfTrailingZeros(mask1)));
+			}
+		}
+		return count;
+	}
+
+	// Makes the double move with the given rank among Mr X's double moves, in countDoubles order
+	private long doubleMove(int rank) {
+		int source = locations[0];
+		int owned = owned(0);
+		for (int edge1 = graph.start(source); edge1 < graph.end(source); edge1++) {
+			int middle = graph.target(edge1);
+			int mask1 = usable(0, edge1, owned);
+			if (isOccupied(middle) || mask1 == 0) continue;
+			countSecondLegs(middle);
+			for (; mask1 != 0; mask1 &= mask1 - 1) {
+				int ticket1 = Integer.numberOfTrailingZeros(mask1);
+				int owned2 = ownedAfter(owned, ticket1);
+				int legs = sum(owned2);
+				if (rank >= legs) {
+					rank -= legs;
+					continue;
+				}
+				for (int edge2 = graph.start(middle); edge2 < graph.end(middle); edge2++) {
+					int destination = graph.target(edge2);
+					if (isOccupied(destination)) continue;
+					for (int mask2 = (graph.ticketMask(edge2) | (1 << SECRET)) & owned2; mask2 != 0; mask2 &= mask2 - 1) {
+						if (rank-- == 0) {
+							int ticket2 = Integer.numberOfTrailingZeros(mask2);
+							tickets[DOUBLE]--;
+							moveMrX(ticket1, middle);
+							moveMrX(ticket2, destination);
+							return PackedMove.doubleMove(pieceIndices[0], graph.node(source),
+									ticket1, graph.node(middle), ticket2, graph.node(destination));
+						}
+					}
+				}
+				throw new AssertionError("Second leg out of range");
+			}
+		}
+		throw new AssertionError("Double move " + rank + " out of range");
+	}
+
+	private void moveMrX(int ticket, int destination) {
+		tickets[ticket]--;
+		locations[0] = destination;
+		logSize++;
+		remaining = everyone;
+	}
+
+	private void moveDetective(int slot, int ticket, int destination) {
+		int source = locations[slot];
+		occupied[source >>> 6] &= ~(1L << source);
+		occupied[destination >>> 6] |= 1L << destination;
+		locations[slot] = destination;
+		tickets[slot * TICKETS + ticket]--;
+		tickets[ticket]++;
+		detectiveTickets--;
+		captured |= destination == locations[0];
+		remaining &= ~(1 << slot);
+	}
+
+	/**
+	 * @return the number of moves made in every playout so far
+	 */
+	public long plies() { return plies; }
+	/**
+	 * @return the number of playouts so far
+	 */
+	public long games() { return games; }
+	/**
+	 * @return the time spent in playouts so far, in nanoseconds
+	 */
+	public long nanos() { return nanos; }
+	/**
+	 * @return the moves made per second of playouts, 0 before the first playout
+	 */
+	public double pliesPerSecond() { return nanos == 0 ? 0 : plies / (nanos / 1e9); }
+	/**
+	 * @return the playouts finished per second, 0 before the first playout
+	 */
+	public double gamesPerSecond() { return nanos == 0 ? 0 : games / (nanos / 1e9); }
+	/**
+	 * Resets the number of plies, games and the time spent to zero
+	 */
+	public void resetStatistics() {
+		plies = 0;
+		games = 0;
+		nanos = 0;
+	}
+}
@@ -0,0 +1,589 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.ToIntFunction;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * A mutable game state for tree search. {@link #make(Move)} applies a move in place and
+ * {@link #unmake()} takes back the most recent one; neither allocates once the state is built.
+ * The rules are the same as {@link MyGameStateFactory}, so the available moves and winners always
+ * agree with the immutable game states.
+ * <br>
+ * Players are kept in slots: slot 0 is Mr X and the detectives follow in
+ * {@link ScotlandYard#ALL_PIECES} order. Stations are the dense indices of the setup's
+ * {@link CompiledGraph}.
+ * <br>
+ * Instances are not thread safe, use one per search thread.
+ */
+public final class SearchState {
+
+	private static final int TICKETS = Ticket.values().length;
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final int SECRET = Ticket.SECRET.ordinal();
+
+	private final GameSetup setup;
+	private final CompiledGraph graph;
+	private final boolean[] reveals; // Whether each round of the log reveals Mr X
+	private final Piece[] pieces; // Slot to piece
+	private final int[] pieceIndices; // Slot to index in ScotlandYard.ALL_PIECES
+	private final int[] locations; // Slot to station index
+	private final int[] tickets; // Ticket counts, slot * TICKETS + ticket ordinal
+	private final boolean[] occupied; // Station indices occupied by detectives
+	private final int everyone; // Mask with every slot set
+	private int remaining; // Slots which have not yet moved in the current round
+	private int detectiveTickets; // Total tickets held by detectives
+	private final int[] logTickets; // Ticket ordinal of each log entry
+	private final int[] logLocations; // Station index revealed by each log entry, -1 if hidden
+	private int logSize;
+	private long key; // Zobrist board key, see Board#getZobristKey
+	private final ImmutableSet<Piece> mrXWins;
+	private final ImmutableSet<Piece> detectivesWin;
+
+	// Undo stack, one entry for each move made
+	private int depth;
+	private int[] undoSlot = new int[64];
+	private int[] undoSource = new int[64];
+	private int[] undoTicket1 = new int[64];
+	private int[] undoTicket2 = new int[64]; // -1 for single moves
+	private int[] undoRemaining = new int[64];
+	private long[] undoKey = new long[64];
+	private boolean[] undoJoined = new boolean[64]; // Taken back together with the move before
+	private boolean joining; // Whether moves being made join the one before
+
+	private final int[] slots = new int[ALL_PIECES.size()]; // Index in ALL_PIECES to slot, -1 if absent
+
+	private SearchState(GameSetup setup, List<Piece> detectives) {
+		this.setup = Objects.requireNonNull(setup);
+		this.graph = CompiledGraph.of(setup);
+		this.reveals = new boolean[setup.moves.size()];
+		for (int i = 0; i < reveals.length; i++) reveals[i] = setup.moves.get(i);
+		this.pieces = new Piece[detectives.size() + 1];
+		this.pieces[0] = Piece.MrX.MRX;
+		for (int i = 0; i < detectives.size(); i++) pieces[i + 1] = detectives.get(i);
+		Arrays.sort(pieces, ScotlandYard.PIECE_VALUE_ORDER);
+		for (int i = 1; i < pieces.length; i++) {
+			if (pieces[i].isMrX()) throw new IllegalArgumentException("There must only be one Mr X");
+			if (pieces[i] == pieces[i - 1])
+				throw new IllegalArgumentException("Detectives cannot have duplicate pieces");
+		}
+		this.pieceIndices = Arrays.stream(pieces).mapToInt(ALL_PIECES::indexOf).toArray();
+		Arrays.fill(slots, -1);
+		for (int slot = 0; slot < pieces.length; slot++) slots[pieceIndices[slot]] = slot;
+		this.locations = new int[pieces.length];
+		this.tickets = new int[pieces.length * TICKETS];
+		this.occupied = new boolean[graph.size()];
+		this.everyone = (1 << pieces.length) - 1;
+		this.logTickets = new int[reveals.length];
+		this.logLocations = new int[reveals.length];
+		this.mrXWins = ImmutableSet.of(Piece.MrX.MRX);
+		this.detectivesWin = ImmutableSet.copyOf(Arrays.asList(pieces).subList(1, pieces.length));
+	}
+
+	/**
+	 * Creates a search state at the start of a game, see
+	 * {@link ScotlandYard.Factory#build(GameSetup, Player, ImmutableList)}
+	 *
+	 * @param setup the game setup
+	 * @param mrX MrX player
+	 * @param detectives detective players
+	 * @return a search state with Mr X to move
+	 */
+	@Nonnull public static SearchState of(@Nonnull GameSetup setup,
+	                                      @Nonnull Player mrX,
+	                                      @Nonnull List<Player> detectives) {
+		if (!mrX.isMrX()) throw new IllegalArgumentException("Mr X must be played by a Mr X piece");
+		SearchState state = new SearchState(setup,
+				detectives.stream().map(Player::piece).collect(ImmutableList.toImmutableList()));
+		state.place(mrX.piece(), mrX.location(), mrX::count);
+		for (Player detective : detectives) {
+			if (detective.has(Ticket.SECRET) || detective.has(Ticket.DOUBLE))
+				throw new IllegalArgumentException("Detectives cannot have secret or double tickets");
+			state.place(detective.piece(), detective.location(), detective::count);
+		}
+		state.setRemaining(1);
+		return state;
+	}
+
+	/**
+	 * Creates a search state from a board where Mr X is to move, using the source of Mr X's
+	 * available moves as his location.
+	 *
+	 * @param board the board
+	 * @return a search state matching the board
+	 * @throws IllegalArgumentException if it is not Mr X's turn on the board
+	 */
+	@Nonnull public static SearchState of(@Nonnull Board board) {
+		return of(board, board.getAvailableMoves().stream()
+				.filter(move -> move.commencedBy().isMrX())
+				.mapToInt(Move::source)
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Mr X's location is unknown")));
+	}
+
+	/**
+	 * Creates a search state from a board.
+	 * <br>
+	 * The board does not say which detectives are still to move, so it is taken from the
+	 * available moves. Detectives who are still to move but cannot move at the moment are
+	 * treated as having moved.
+	 *
+	 * @param board the board
+	 * @param mrXLocation Mr X's location, which the board does not reveal
+	 * @return a search state matching the board
+	 */
+	@Nonnull public static SearchState of(@Nonnull Board board, int mrXLocation) {
+		List<Piece> detectives = board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.collect(ImmutableList.toImmutableList());
+		SearchState state = new SearchState(board.getSetup(), detectives);
+		TicketBoard mrXTickets = board.getPlayerTickets(Piece.MrX.MRX).orElseThrow();
+		state.place(Piece.MrX.MRX, mrXLocation, mrXTickets::getCount);
+		for (Piece piece : detectives) {
+			TicketBoard tickets = board.getPlayerTickets(piece).orElseThrow();
+			state.place(piece, board.getDetectiveLocation((Detective) piece).orElseThrow(),
+					tickets::getCount);
+		}
+		ImmutableList<LogEntry> log = board.getMrXTravelLog();
+		if (log.size() > state.logTickets.length)
+			throw new IllegalArgumentException("Travel log is longer than the game");
+		for (LogEntry entry : log) {
+			state.logTickets[state.logSize] = entry.ticket().ordinal();
+			state.logLocations[state.logSize] = entry.location().map(state.graph::indexOf).orElse(-1);
+			state.key ^= Zobrist.logEntry(state.logSize, entry);
+			state.logSize++;
+		}
+		int remaining = 0;
+		for (Move move : board.getAvailableMoves()) {
+			if (move.commencedBy().isDetective()) remaining |= 1 << state.slotOf(move.commencedBy());
+		}
+		state.setRemaining(remaining | 1);
+		return state;
+	}
+
+	private void place(Piece piece, int location, ToIntFunction<Ticket> count) {
+		int slot = slotOf(piece);
+		int index = graph.indexOf(location);
+		if (slot != 0) {
+			if (occupied[index])
+				throw new IllegalArgumentException("Multiple detectives cannot be at the same location");
+			occupied[index] = true;
+			key ^= Zobrist.location(pieceIndices[slot], location);
+		}
+		locations[slot] = index;
+		for (Ticket ticket : Ticket.values()) addTickets(slot, ticket.ordinal(), count.applyAsInt(ticket));
+	}
+
+	private void setRemaining(int remaining) {
+		key ^= remainingKey(this.remaining ^ remaining);
+		this.remaining = remaining;
+	}
+
+	// Zobrist key of every piece in a mask of slots
+	private long remainingKey(int slots) {
+		long key = 0;
+		for (int mask = slots; mask != 0; mask &= mask - 1) {
+			key ^= Zobrist.remaining(pieceIndices[Integer.numberOfTrailingZeros(mask)]);
+		}
+		return key;
+	}
+
+	private void addTickets(int slot, int ticket, int delta) {
+		int i = slot * TICKETS + ticket;
+		key ^= Zobrist.tickets(pieceIndices[slot], ticket, tickets[i])
+				^ Zobrist.tickets(pieceIndices[slot], ticket, tickets[i] + delta);
+		tickets[i] += delta;
+		if (slot != 0) detectiveTickets += delta;
+	}
+
+	/**
+	 * @return the game setup
+	 */
+	@Nonnull public GameSetup getSetup() { return setup; }
+	/**
+	 * @return the compiled graph used for station indices
+	 */
+	@Nonnull public CompiledGraph graph() { return graph; }
+	/**
+	 * @return the pieces in slot order, Mr X first
+	 */
+	@Nonnull public ImmutableList<Piece> pieces() { return ImmutableList.copyOf(pieces); }
+	/**
+	 * @param piece the piece
+	 * @return the slot of the piece
+	 * @throws IllegalArgumentException if the piece is not in the game
+	 */
+	public int slotOf(@Nonnull Piece piece) {
+		int slot = slots[ALL_PIECES.indexOf(piece)];
+		if (slot == -1) throw new IllegalArgumentException(piece + " is not in the game");
+		return slot;
+	}
+	/**
+	 * @param slot the slot
+	 * @return the index in {@link ScotlandYard#ALL_PIECES} of the piece in the slot
+	 */
+	public int pieceIndex(int slot) { return pieceIndices[slot]; }
+	/**
+	 * @return the number of slots, Mr X and the detectives
+	 */
+	public int slots() { return pieces.length; }
+	/**
+	 * @param slot the slot
+	 * @return the station of the player in the slot
+	 */
+	public int location(int slot) { return graph.node(locations[slot]); }
+	/**
+	 * @param slot the slot
+	 * @param ticket the ticket
+	 * @return the number of the tickets held by the player in the slot
+	 */
+	public int tickets(int slot, @Nonnull Ticket ticket) { return tickets[slot * TICKETS + ticket.ordinal()]; }
+	/**
+	 * @return the number of entries in Mr X's travel log
+	 */
+	public int logSize() { return logSize; }
+	/**
+	 * @param round the log entry
+	 * @return the ticket used for the log entry
+	 */
+	@Nonnull public Ticket logTicket(int round) {
+		if (round >= logSize) throw new IndexOutOfBoundsException(round);
+		return Ticket.values()[logTickets[round]];
+	}
+	/**
+	 * @param round the log entry
+	 * @return the station revealed by the log entry; -1 if it was hidden
+	 */
+	public int logLocation(int round) {
+		if (round >= logSize) throw new IndexOutOfBoundsException(round);
+		return logLocations[round] == -1 ? -1 : graph.node(logLocations[round]);
+	}
+	/**
+	 * @param slot the slot
+	 * @return whether the player in the slot is yet to move in the current round
+	 */
+	public boolean isRemaining(int slot) { return (remaining & (1 << slot)) != 0; }
+	/**
+	 * @return the number of moves made since the state was created, counting each move of a
+	 * joint move
+	 */
+	public int depth() { return depth; }
+
+	/**
+	 * @return the Zobrist key of what every player can see, same as {@link Board#getZobristKey()}
+	 */
+	public long getZobristKey() { return key; }
+	/**
+	 * @return the Zobrist key of the whole position, including Mr X's location
+	 */
+	public long getPositionKey() { return key ^ Zobrist.location(pieceIndices[0], location(0)); }
+
+	/**
+	 * @return whether it is Mr X's turn, i.e no detective that is yet to move can move
+	 */
+	public boolean isMrXTurn() { return !detectivesCanMove(); }
+
+	/**
+	 * @return the winners, same as {@link Board#getWinner()}
+	 */
+	@Nonnull public ImmutableSet<Piece> getWinner() {
+		// The detectives have run out of tickets
+		if (detectiveTickets == 0) return mrXWins;
+		boolean detectivesCanMove = detectivesCanMove();
+		boolean logFull = logSize == reveals.length;
+		// Mr X filled the log and the detectives have made their final moves
+		if (!detectivesCanMove && logFull) return mrXWins;
+		// A detective is on Mr X's station
+		if (occupied[locations[0]]) return detectivesWin;
+		// Nobody can move, Mr X is cornered
+		if (!logFull && isRemaining(0) && !detectivesCanMove && !canMove(0)) return detectivesWin;
+		return ImmutableSet.of();
+	}
+
+	/**
+	 * @return whether the game is over, same as {@code !getWinner().isEmpty()}
+	 */
+	public boolean isGameOver() { return !getWinner().isEmpty(); }
+
+	/**
+	 * @return the available moves, same as {@link Board#getAvailableMoves()}
+	 */
+	@Nonnull public ImmutableSet<Move> getAvailableMoves() {
+		MoveList moves = new MoveList();
+		generate(moves);
+		MovePool pool = MovePool.of(graph);
+		ImmutableSet.Builder<Move> builder = ImmutableSet.builderWithExpectedSize(moves.size());
+		for (int i = 0; i < moves.size(); i++) builder.add(pool.get(moves.get(i)));
+		return builder.build();
+	}
+
+	/**
+	 * Generates the available moves as {@link PackedMove packed moves}, without allocating unless
+	 * the list has to grow.
+	 *
+	 * @param moves the list to add the moves to; it is cleared first
+	 */
+	public void generate(@Nonnull MoveList moves) {
+		moves.clear();
+		if (isGameOver()) return;
+		boolean detectiveMoves = false;
+		for (int slot = 1; slot < pieces.length; slot++) {
+			if (isRemaining(slot)) detectiveMoves |= addSingleMoves(moves, slot);
+		}
+		if (!detectiveMoves) {
+			addSingleMoves(moves, 0);
+			if (canDoubleMove()) addDoubleMoves(moves);
+		}
+	}
+
+	/**
+	 * @param move the move
+	 * @return whether the move is one of {@link #getAvailableMoves()}
+	 */
+	public boolean isLegal(@Nonnull Move move) {
+		if (isGameOver()) return false;
+		int slot;
+		try {
+			slot = slotOf(move.commencedBy());
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		if (slot == 0 ? detectivesCanMove() : !isRemaining(slot)) return false;
+		if (move.source() != graph.node(locations[slot])) return false;
+		return move.accept(new Move.FunctionalVisitor<>(
+				m -> has(slot, m.ticket.ordinal(), 1)
+						&& canTravel(locations[slot], m.ticket, m.destination),
+				m -> slot == 0 && canDoubleMove()
+						&& has(0, m.ticket1.ordinal(), m.ticket1 == m.ticket2 ? 2 : 1)
+						&& has(0, m.ticket2.ordinal(), 1)
+						&& canTravel(locations[0], m.ticket1, m.destination1)
+						&& canTravel(graph.index(m.destination1), m.ticket2, m.destination2)));
+	}
+
+	/**
+	 * Applies a move in place. The move must be one of {@link #getAvailableMoves()}, which is not
+	 * checked; use {@link #isLegal(Move)} for untrusted moves.
+	 *
+	 * @param move the move
+	 */
+	public void make(@Nonnull Move move) { make(PackedMove.pack(move)); }
+
+	/**
+	 * Applies a {@link PackedMove packed move} in place, see {@link #make(Move)}
+	 *
+	 * @param move the packed move
+	 */
+	public void make(long move) {
+		int slot = slots[PackedMove.pieceIndex(move)];
+		int ticket1 = PackedMove.ticket1Ordinal(move);
+		int destination1 = graph.indexOf(PackedMove.destination1(move));
+		if (PackedMove.isDouble(move)) {
+			int ticket2 = PackedMove.ticket2Ordinal(move);
+			push(0, ticket1, ticket2);
+			addTickets(0, DOUBLE, -1);
+			moveMrX(ticket1, destination1);
+			moveMrX(ticket2, graph.indexOf(PackedMove.destination2(move)));
+		} else {
+			push(slot, ticket1, -1);
+			if (slot == 0) moveMrX(ticket1, destination1);
+			else moveDetective(slot, ticket1, destination1);
+		}
+	}
+
+	/**
+	 * Applies every {@link PackedMove packed move} of a joint move in list order, such as one from
+	 * {@link JointMoves}, so that {@link #unmake()} takes them all back at once. The moves must be
+	 * legal in turn, which is not checked.
+	 *
+	 * @param moves the packed moves
+	 * @throws IllegalArgumentException if there are no moves
+	 */
+	public void make(@Nonnull MoveList moves) {
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to make");
+		make(moves.get(0));
+		joining = true;
+		try {
+			for (int i = 1; i < moves.size(); i++) make(moves.get(i));
+		} finally {
+			joining = false;
+		}
+	}
+
+	/**
+	 * Takes back the most recent move made with {@link #make(Move)} or {@link #make(long)}, or
+	 * every move of the most recent {@link #make(MoveList)}
+	 *
+	 * @throws IllegalStateException if there are no moves to take back
+	 */
+	public void unmake() {
+		if (depth == 0) throw new IllegalStateException("No moves to unmake");
+		boolean joined;
+		do {
+			joined = undoJoined[depth - 1];
+			unmakeOne();
+		} while (joined);
+	}
+
+	private void unmakeOne() {
+		depth--;
+		int slot = undoSlot[depth];
+		int ticket1 = undoTicket1[depth];
+		int ticket2 = undoTicket2[depth];
+		int from = undoSource[depth];
+		// Counts are restored directly, the key is restored from the stack
+		if (slot == 0) {
+			tickets[ticket1]++;
+			logSize--;
+			if (ticket2 != -1) {
+				tickets[ticket2]++;
+				tickets[DOUBLE]++;
+				logSize--;
+			}
+		} else {
+			occupied[locations[slot]] = false;
+			occupied[from] = true;
+			tickets[slot * TICKETS + ticket1]++;
+			tickets[ticket1]--;
+			detectiveTickets++;
+		}
+		locations[slot] = from;
+		remaining = undoRemaining[depth];
+		key = undoKey[depth];
+	}
+
+	private void push(int slot, int ticket1, int ticket2) {
+		if (depth == undoSlot.length) {
+			int capacity = depth * 2;
+			undoSlot = Arrays.copyOf(undoSlot, capacity);
+			undoSource = Arrays.copyOf(undoSource, capacity);
+			undoTicket1 = Arrays.copyOf(undoTicket1, capacity);
+			undoTicket2 = Arrays.copyOf(undoTicket2, capacity);
+			undoRemaining = Arrays.copyOf(undoRemaining, capacity);
+			undoKey = Arrays.copyOf(undoKey, capacity);
+			undoJoined = Arrays.copyOf(undoJoined, capacity);
+		}
+		undoSlot[depth] = slot;
+		undoSource[depth] = locations[slot];
+		undoTicket1[depth] = ticket1;
+		undoTicket2[depth] = ticket2;
+		undoRemaining[depth] = remaining;
+		undoKey[depth] = key;
+		undoJoined[depth] = joining;
+		depth++;
+		// Mr X moving always starts a new round, otherwise the detective has moved
+		int next = slot == 0 ? everyone : remaining & ~(1 << slot);
+		setRemaining(next == 0 ? everyone : next);
+	}
+
+	private void moveMrX(int ticket, int destination) {
+		addTickets(0, ticket, -1);
+		locations[0] = destination;
+		logTickets[logSize] = ticket;
+		logLocations[logSize] = reveals[logSize] ? destination : -1;
+		key ^= Zobrist.logEntry(logSize, ticket, reveals[logSize] ? graph.node(destination) : 0);
+		logSize++;
+	}
+
+	private void moveDetective(int slot, int ticket, int destination) {
+		key ^= Zobrist.location(pieceIndices[slot], graph.node(locations[slot]))
+				^ Zobrist.location(pieceIndices[slot], graph.node(destination));
+		occupied[locations[slot]] = false;
+		occupied[destination] = true;
+		locations[slot] = destination;
+		addTickets(slot, ticket, -1);
+		addTickets(0, ticket, 1);
+	}
+
+	private boolean has(int slot, int ticket, int count) {
+		return tickets[slot * TICKETS + ticket] >= count;
+	}
+
+	private boolean canDoubleMove() {
+		return has(0, DOUBLE, 1) && reveals.length - logSize >= 2;
+	}
+
+	private boolean canTravel(int from, Ticket ticket, int destination) {
+		int to = graph.index(destination);
+		if (to == -1 || occupied[to]) return false;
+		int edge = graph.edge(from, to);
+		return edge != -1 && graph.canUse(edge, ticket);
+	}
+
+	// Mask of ticket ordinals held by the player in a slot
+	private int owned(int slot) {
+		int owned = 0;
+		for (int ticket = 0; ticket < TICKETS; ticket++) {
+			if (tickets[slot * TICKETS + ticket] > 0) owned |= 1 << ticket;
+		}
+		return owned;
+	}
+
+	// Mask of ticket ordinals usable along an edge by the player in a slot holding the owned tickets
+	private int usable(int slot, int edge, int owned) {
+		int mask = slot == 0 ? graph.ticketMask(edge) | (1 << SECRET) : graph.ticketMask(edge);
+		return mask & owned;
+	}
+
+	private boolean detectivesCanMove() {
+		for (int slot = 1; slot < pieces.length; slot++) {
+			if (isRemaining(slot) && canMove(slot)) return true;
+		}
+		return false;
+	}
+
+	private boolean canMove(int slot) {
+		int source = locations[slot];
+		int owned = owned(slot);
+		for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+			if (!occupied[graph.target(edge)] && usable(slot, edge, owned) != 0) return true;
+		}
+		return false;
+	}
+
+	private boolean addSingleMoves(MoveList moves, int slot) {
+		int source = locations[slot];
+		int piece = pieceIndices[slot];
+		int owned = owned(slot);
+		boolean added = false;
+		for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+			int destination = graph.target(edge);
+			if (occupied[destination]) continue;
+			for (int mask = usable(slot, edge, owned); mask != 0; mask &= mask - 1) {
+				moves.add(PackedMove.single(piece, graph.node(source),
+						Integer.numberOfTrailingZeros(mask), graph.node(destination)));
+				added = true;
+			}
+		}
+		return added;
+	}
+
+	private void addDoubleMoves(MoveList moves) {
+		int source = locations[0];
+		int piece = pieceIndices[0];
+		TwoHopTable twoHops = TwoHopTable.of(graph);
+		for (int edge1 = graph.start(source); edge1 < graph.end(source); edge1++) {
+			int middle = graph.target(edge1);
+			if (occupied[middle]) continue;
+			for (int route : twoHops.routes(edge1)) {
+				int ticket1 = TwoHopTable.ticket1(route), ticket2 = TwoHopTable.ticket2(route);
+				if (!has(0, ticket1, ticket1 == ticket2 ? 2 : 1) || !has(0, ticket2, 1)) continue;
+				int destination = graph.target(TwoHopTable.edge2(route));
+				if (occupied[destination]) continue;
+				moves.add(PackedMove.doubleMove(piece, graph.node(source),
+						ticket1, graph.node(middle), ticket2, graph.node(destination)));
+			}
+		}
+	}
+}
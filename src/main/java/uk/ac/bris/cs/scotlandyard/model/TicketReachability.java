@@ -0,0 +1,229 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * The fewest moves from a station to every other station with a limited number of tickets.
+ * <br>
+ * Unlike {@link DistanceTable}, routes must be paid for: each journey uses a
+ * {@link Ticket#TAXI}, {@link Ticket#BUS} or {@link Ticket#UNDERGROUND} ticket for its transport,
+ * or a {@link Ticket#SECRET} ticket for any transport including the ferry. Double moves are not
+ * considered. A station counts as reachable within {@code k} moves if some route of at most
+ * {@code k} journeys can be paid for, so {@link #reachable(int)} needs no further search.
+ * <br>
+ * The search is a breadth first search over stations and the tickets left. A state is dropped if
+ * an earlier or equally early state at the same station has at least as many of every ticket, so
+ * only the states that could still lead somewhere new are expanded. Detectives are solved
+ * together with {@link #ofDetectives(Board, int)}, sharing scratch space.
+ */
+public final class TicketReachability {
+
+	// Tickets left are packed a byte each, taxi lowest, in the order of this array
+	private static final Ticket[] TICKETS = { Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND, Ticket.SECRET };
+	private static final int SECRET_SHIFT = 24;
+	private static final int TRANSPORT_TICKETS =
+			1 << Ticket.TAXI.ordinal() | 1 << Ticket.BUS.ordinal() | 1 << Ticket.UNDERGROUND.ordinal();
+
+	private final CompiledGraph graph;
+	private final byte[] moves; // Indexed by station index, DistanceTable.UNREACHABLE if not reached
+
+	private TicketReachability(CompiledGraph graph, byte[] moves) {
+		this.graph = graph;
+		this.moves = moves;
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @param source the station to start from
+	 * @param tickets the tickets that can be used
+	 * @return the fewest moves to every station
+	 * @throws IllegalArgumentException if the source is not on the graph
+	 */
+	@Nonnull public static TicketReachability of(@Nonnull CompiledGraph graph,
+	                                             int source,
+	                                             @Nonnull TicketBoard tickets) {
+		return of(graph, source, tickets, DistanceTable.UNREACHABLE - 1);
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @param source the station to start from
+	 * @param tickets the tickets that can be used
+	 * @param maxMoves the most moves to search, stations further away are unreachable
+	 * @return the fewest moves to every station within the limit
+	 * @throws IllegalArgumentException if the source is not on the graph or the limit is negative
+	 */
+	@Nonnull public static TicketReachability of(@Nonnull CompiledGraph graph,
+	                                             int source,
+	                                             @Nonnull TicketBoard tickets,
+	                                             int maxMoves) {
+		return new Search(Objects.requireNonNull(graph)).run(source, tickets, maxMoves);
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @param player the player, starting from their location with their tickets
+	 * @return the fewest moves to every station
+	 */
+	@Nonnull public static TicketReachability of(@Nonnull CompiledGraph graph, @Nonnull Player player) {
+		return of(graph, player.location(), player.ticketBoard());
+	}
+
+	/**
+	 * @param board the board
+	 * @param maxMoves the most moves to search, stations further away are unreachable
+	 * @return the fewest moves to every station for every detective on the board, in player order
+	 * @throws IllegalArgumentException if the limit is negative
+	 */
+	@Nonnull public static ImmutableMap<Detective, TicketReachability> ofDetectives(@Nonnull Board board,
+	                                                                                 int maxMoves) {
+		Search search = new Search(CompiledGraph.of(board.getSetup()));
+		ImmutableMap.Builder<Detective, TicketReachability> result = ImmutableMap.builder();
+		for (Piece piece : board.getPlayers()) {
+			if (!piece.isDetective()) continue;
+			Detective detective = (Detective) piece;
+			var location = board.getDetectiveLocation(detective);
+			var tickets = board.getPlayerTickets(detective);
+			if (location.isPresent() && tickets.isPresent())
+				result.put(detective, search.run(location.get(), tickets.get(), maxMoves));
+		}
+		return result.build();
+	}
+
+	// Scratch space reused between searches on the same graph
+	private static final class Search {
+		private final CompiledGraph graph;
+		private final int[][] frontiers; // Undominated ticket vectors found at each station index
+		private final int[] frontierSizes;
+		private int[] current = new int[64], next = new int[64]; // Pairs of station index and tickets
+
+		Search(CompiledGraph graph) {
+			this.graph = graph;
+			this.frontiers = new int[graph.size()][];
+			this.frontierSizes = new int[graph.size()];
+		}
+
+		TicketReachability run(int source, TicketBoard tickets, int maxMoves) {
+			if (maxMoves < 0) throw new IllegalArgumentException("Negative move limit " + maxMoves);
+			int limit = Math.min(maxMoves, DistanceTable.UNREACHABLE - 1);
+			int start = graph.indexOf(source);
+			int packed = 0;
+			for (int t = 0; t < TICKETS.length; t++) {
+				packed |= Math.min(Math.max(tickets.getCount(TICKETS[t]), 0), 0xFF) << (8 * t);
+			}
+			Arrays.fill(frontierSizes, 0);
+			byte[] moves = new byte[graph.size()];
+			Arrays.fill(moves, (byte) DistanceTable.UNREACHABLE);
+			moves[start] = 0;
+			add(start, packed);
+			current[0] = start;
+			current[1] = packed;
+			int currentSize = 2;
+			for (int depth = 1; depth <= limit && currentSize > 0; depth++) {
+				int nextSize = 0;
+				for (int k = 0; k < currentSize; k += 2) {
+					int index = current[k], left = current[k + 1];
+					for (int edge = graph.start(index); edge < graph.end(index); edge++) {
+						int target = graph.target(edge);
+						for (int mask = graph.ticketMask(edge) & TRANSPORT_TICKETS; mask != 0; mask &= mask - 1) {
+							int shift = 8 * Integer.numberOfTrailingZeros(mask);
+							if ((left >>> shift & 0xFF) != 0 && add(target, left - (1 << shift)))
+								nextSize = push(nextSize, target, left - (1 << shift));
+						}
+						if ((left >>> SECRET_SHIFT) != 0 && add(target, left - (1 << SECRET_SHIFT)))
+							nextSize = push(nextSize, target, left - (1 << SECRET_SHIFT));
+						if (moves[target] == (byte) DistanceTable.UNREACHABLE && frontierSizes[target] != 0)
+							moves[target] = (byte) depth;
+					}
+				}
+				int[] swap = current;
+				current = next;
+				next = swap;
+				currentSize = nextSize;
+			}
+			return new TicketReachability(graph, moves);
+		}
+
+		private int push(int size, int index, int left) {
+			if (size + 2 > next.length) next = Arrays.copyOf(next, next.length * 2);
+			next[size] = index;
+			next[size + 1] = left;
+			return size + 2;
+		}
+
+		// Adds the tickets to the station's frontier unless they are dominated, dropping any they dominate
+		private boolean add(int index, int left) {
+			int[] frontier = frontiers[index];
+			int size = frontierSizes[index];
+			if (frontier == null) frontier = frontiers[index] = new int[4];
+			int kept = 0;
+			for (int k = 0; k < size; k++) {
+				if (dominates(frontier[k], left)) return false;
+				if (!dominates(left, frontier[k])) frontier[kept++] = frontier[k];
+			}
+			if (kept == frontier.length) frontier = frontiers[index] = Arrays.copyOf(frontier, kept * 2);
+			frontier[kept++] = left;
+			frontierSizes[index] = kept;
+			return true;
+		}
+
+		private static boolean dominates(int a, int b) {
+			for (int shift = 0; shift < 32; shift += 8) {
+				if ((a >>> shift & 0xFF) < (b >>> shift & 0xFF)) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @param index the station index to reach
+	 * @return the fewest moves to the index, or {@link DistanceTable#UNREACHABLE}
+	 */
+	public int indexMoves(int index) { return moves[index] & 0xFF; }
+
+	/**
+	 * @param station the station to reach
+	 * @return the fewest moves to the station, or {@link DistanceTable#UNREACHABLE}
+	 * @throws IllegalArgumentException if the station is not on the graph
+	 */
+	public int moves(int station) { return indexMoves(graph.indexOf(station)); }
+
+	/**
+	 * @param moves the most moves
+	 * @return the station indices reachable within the moves, as a bitset
+	 */
+	@Nonnull public long[] reachableIndices(int moves) {
+		long[] result = new long[graph.words()];
+		for (int index = 0; index < this.moves.length; index++) {
+			if (within(index, moves)) result[index >>> 6] |= 1L << index;
+		}
+		return result;
+	}
+
+	/**
+	 * @param moves the most moves
+	 * @return the stations reachable within the moves, in ascending order
+	 */
+	@Nonnull public ImmutableSet<Integer> reachable(int moves) {
+		ImmutableSet.Builder<Integer> result = ImmutableSet.builder();
+		for (int index = 0; index < this.moves.length; index++) {
+			if (within(index, moves)) result.add(graph.node(index));
+		}
+		return result.build();
+	}
+
+	private boolean within(int index, int moves) {
+		int fewest = this.moves[index] & 0xFF;
+		return fewest != DistanceTable.UNREACHABLE && fewest <= moves;
+	}
+}
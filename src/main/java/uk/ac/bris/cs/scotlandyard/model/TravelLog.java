@@ -0,0 +1,119 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A persistent, append-only travel log. Each log points at the log it was appended to, so
+ * appending is constant time and every game state shares the entries of its predecessors instead
+ * of copying them.
+ * <br>
+ * {@link #asList()} is built once per log on first use, which is what
+ * {@link Board#getMrXTravelLog()} returns.
+ */
+public final class TravelLog {
+
+	private static final TravelLog EMPTY = new TravelLog(null, null, 0);
+
+	private final TravelLog previous; // The log this one was appended to, null when empty
+	private final LogEntry entry; // The last entry, null when empty
+	private final int size;
+	private volatile ImmutableList<LogEntry> list; // Built lazily, see asList
+
+	private TravelLog(TravelLog previous, LogEntry entry, int size) {
+		this.previous = previous;
+		this.entry = entry;
+		this.size = size;
+	}
+
+	/**
+	 * @return the empty log
+	 */
+	@Nonnull public static TravelLog empty() { return EMPTY; }
+
+	/**
+	 * @param entries the entries
+	 * @return a log with the given entries in order
+	 */
+	@Nonnull public static TravelLog of(@Nonnull Iterable<LogEntry> entries) {
+		TravelLog log = EMPTY;
+		for (LogEntry entry : entries) log = log.append(entry);
+		return log;
+	}
+
+	/**
+	 * @param entry the entry
+	 * @return a new log with the entry added to the end; this log is unchanged
+	 */
+	@Nonnull public TravelLog append(@Nonnull LogEntry entry) {
+		return new TravelLog(this, Objects.requireNonNull(entry), size + 1);
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @return whether the log has no entries
+	 */
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * @return the last entry
+	 * @throws IllegalStateException if the log is empty
+	 */
+	@Nonnull public LogEntry last() {
+		if (size == 0) throw new IllegalStateException("Log is empty");
+		return entry;
+	}
+
+	/**
+	 * @param index the index of the entry
+	 * @return the entry, found by walking back from the end unless the list is already built
+	 */
+	@Nonnull public LogEntry get(int index) {
+		Objects.checkIndex(index, size);
+		ImmutableList<LogEntry> built = list;
+		if (built != null) return built.get(index);
+		TravelLog log = this;
+		while (log.size > index + 1) log = log.previous;
+		return log.entry;
+	}
+
+	/**
+	 * @return the entries as a list, built on first use and kept
+	 */
+	@Nonnull public ImmutableList<LogEntry> asList() {
+		ImmutableList<LogEntry> built = list;
+		if (built == null) {
+			// Reuse the longest list already built by an earlier log
+			TravelLog log = this;
+			while (log.size > 0 && log.list == null) log = log.previous;
+			LogEntry[] entries = new LogEntry[size];
+			ImmutableList<LogEntry> prefix = log.size == 0 ? ImmutableList.of() : log.list;
+			for (int i = 0; i < prefix.size(); i++) entries[i] = prefix.get(i);
+			for (TravelLog l = this; l.size > prefix.size(); l = l.previous) entries[l.size - 1] = l.entry;
+			list = built = ImmutableList.copyOf(entries);
+		}
+		return built;
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof TravelLog)) return false;
+		TravelLog that = (TravelLog) o;
+		if (size != that.size) return false;
+		for (TravelLog a = this, b = that; a != b; a = a.previous, b = b.previous) {
+			if (!a.entry.equals(b.entry)) return false;
+		}
+		return true;
+	}
+
+	@Override public int hashCode() { return asList().hashCode(); }
+
+	@Override public String toString() { return asList().toString(); }
+}
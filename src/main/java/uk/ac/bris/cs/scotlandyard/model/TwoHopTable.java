@@ -0,0 +1,109 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Every two-leg route of a graph, for generating double moves without walking the neighbours of
+ * each intermediate station again in every game state.
+ * <br>
+ * The routes are grouped by the edge of their first leg, which fixes the source and intermediate
+ * station. A route is packed into an {@code int}:
+ * <pre>
+ *  0 -  2 first ticket ordinal
+ *  3 -  5 second ticket ordinal
+ *  6 - 31 edge of the second leg, which fixes the destination
+ * </pre>
+ * Routes include every ticket that could be used, as if the player held all of them, so only
+ * occupancy and ticket counts are left to check when generating moves. Routes of an edge are in
+ * order of first ticket, then second edge, then second ticket.
+ * <br>
+ * Use {@link #of(CompiledGraph)} to obtain the table shared by every game on the same graph.
+ * Routes are computed for each first edge when first asked for.
+ */
+public final class TwoHopTable {
+
+	private static final LoadingCache<CompiledGraph, TwoHopTable> CACHE =
+			CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(TwoHopTable::new));
+
+	private static final int SECRET = 1 << Ticket.SECRET.ordinal();
+	private static final int TICKET2 = 3, EDGE2 = 6;
+
+	private final CompiledGraph graph;
+	private final AtomicReferenceArray<int[]> routes; // Indexed by the edge of the first leg
+
+	private TwoHopTable(CompiledGraph graph) {
+		this.graph = graph;
+		this.routes = new AtomicReferenceArray<>(graph.size() == 0 ? 0 : graph.end(graph.size() - 1));
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the table of the setup's graph
+	 */
+	@Nonnull public static TwoHopTable of(@Nonnull GameSetup setup) { return of(CompiledGraph.of(setup)); }
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the table shared by every game on the graph
+	 */
+	@Nonnull public static TwoHopTable of(@Nonnull CompiledGraph graph) {
+		return CACHE.getUnchecked(Objects.requireNonNull(graph));
+	}
+
+	/**
+	 * @param edge the edge of the first leg
+	 * @return the packed routes starting with the edge; the array is shared and must not be
+	 * modified
+	 */
+	@Nonnull public int[] routes(int edge) {
+		int[] result = routes.get(edge);
+		if (result == null) {
+			// Racing threads build equal arrays, either can be kept
+			result = build(edge);
+			if (!routes.compareAndSet(edge, null, result)) result = routes.get(edge);
+		}
+		return result;
+	}
+
+	private int[] build(int edge1) {
+		int middle = graph.target(edge1);
+		int[] result = new int[16];
+		int size = 0;
+		for (int mask1 = graph.ticketMask(edge1) | SECRET; mask1 != 0; mask1 &= mask1 - 1) {
+			int ticket1 = Integer.numberOfTrailingZeros(mask1);
+			for (int edge2 = graph.start(middle); edge2 < graph.end(middle); edge2++) {
+				for (int mask2 = graph.ticketMask(edge2) | SECRET; mask2 != 0; mask2 &= mask2 - 1) {
+					if (size == result.length) result = Arrays.copyOf(result, size * 2);
+					result[size++] = ticket1 | Integer.numberOfTrailingZeros(mask2) << TICKET2 | edge2 << EDGE2;
+				}
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * @param route the packed route
+	 * @return the ordinal of the first ticket
+	 */
+	public static int ticket1(int route) { return route & 7; }
+	/**
+	 * @param route the packed route
+	 * @return the ordinal of the second ticket
+	 */
+	public static int ticket2(int route) { return route >>> TICKET2 & 7; }
+	/**
+	 * @param route the packed route
+	 * @return the edge of the second leg
+	 */
+	public static int edge2(int route) { return route >>> EDGE2; }
+}
@@ -0,0 +1,176 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * Zobrist hashing of game positions. A key is the XOR of one 64-bit value for each feature of the
+ * position, so a move updates it in constant time by XOR-ing out the features it removes and
+ * XOR-ing in the ones it adds.
+ * <br>
+ * The features of a {@link Board#getZobristKey() board key} are what every player can see:
+ * detective locations, the ticket count of each player for each ticket, the players yet to move
+ * in the current round and each entry of Mr X's travel log. Mr X's location is not part of it,
+ * {@link #location(Piece, int)} of Mr X can be added for searches that know where he is.
+ * <br>
+ * Feature values are derived by mixing a feature id rather than stored in tables, so any number of
+ * stations, rounds or tickets can be hashed.
+ */
+public final class Zobrist {
+
+	private static final int LOCATION = 1, TICKETS = 2, REMAINING = 3, LOG = 4;
+
+	private Zobrist() {}
+
+	// SplitMix64 finaliser, see java.util.SplittableRandom
+	private static long mix(long z) {
+		z += 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long feature(int kind, int a, int b, int c) {
+		return mix((long) kind << 56 | (long) (a & 0xff) << 48 | (long) (b & 0xffff) << 32 | (c & 0xffffffffL));
+	}
+
+	/**
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param station the station
+	 * @return the key of the piece standing on the station
+	 */
+	public static long location(int piece, int station) { return feature(LOCATION, piece, 0, station); }
+	/**
+	 * @param piece the piece
+	 * @param station the station
+	 * @return the key of the piece standing on the station
+	 */
+	public static long location(@Nonnull Piece piece, int station) {
+		return location(ALL_PIECES.indexOf(piece), station);
+	}
+	/**
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param ticket the ticket ordinal
+	 * @param count the number of tickets held
+	 * @return the key of the piece holding the tickets; zero for no tickets, so absent tickets
+	 * do not need to be hashed
+	 */
+	public static long tickets(int piece, int ticket, int count) {
+		return count == 0 ? 0 : feature(TICKETS, piece, ticket, count);
+	}
+	/**
+	 * @param piece the piece
+	 * @param ticket the ticket
+	 * @param count the number of tickets held
+	 * @return the key of the piece holding the tickets
+	 */
+	public static long tickets(@Nonnull Piece piece, @Nonnull Ticket ticket, int count) {
+		return tickets(ALL_PIECES.indexOf(piece), ticket.ordinal(), count);
+	}
+	/**
+	 * @param before the player before a move
+	 * @param after the same player after the move
+	 * @return the key to XOR for the change in the player's tickets
+	 */
+	public static long tickets(@Nonnull Player before, @Nonnull Player after) {
+		int piece = ALL_PIECES.indexOf(before.piece());
+		long key = 0;
+		for (Ticket ticket : Ticket.values()) {
+			int from = before.count(ticket);
+			int to = after.count(ticket);
+			if (from != to) key ^= tickets(piece, ticket.ordinal(), from) ^ tickets(piece, ticket.ordinal(), to);
+		}
+		return key;
+	}
+	/**
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @return the key of the piece being yet to move in the current round
+	 */
+	public static long remaining(int piece) { return feature(REMAINING, piece, 0, 0); }
+	/**
+	 * @param piece the piece
+	 * @return the key of the piece being yet to move in the current round
+	 */
+	public static long remaining(@Nonnull Piece piece) { return remaining(ALL_PIECES.indexOf(piece)); }
+	/**
+	 * @param round the index of the entry in the log
+	 * @param ticket the ticket ordinal
+	 * @param station the revealed station; 0 if hidden
+	 * @return the key of the log entry
+	 */
+	public static long logEntry(int round, int ticket, int station) {
+		return feature(LOG, ticket, round, station);
+	}
+	/**
+	 * @param round the index of the entry in the log
+	 * @param entry the entry
+	 * @return the key of the log entry
+	 */
+	public static long logEntry(int round, @Nonnull LogEntry entry) {
+		return logEntry(round, entry.ticket().ordinal(), entry.location().orElse(0));
+	}
+
+	/**
+	 * Computes a board key from scratch.
+	 *
+	 * @param mrX Mr X, only his tickets are hashed
+	 * @param detectives the detectives
+	 * @param remaining the players yet to move in the current round
+	 * @param log Mr X's travel log
+	 * @return the key
+	 */
+	public static long of(@Nonnull Player mrX,
+	                      @Nonnull List<Player> detectives,
+	                      @Nonnull Set<Piece> remaining,
+	                      @Nonnull List<LogEntry> log) {
+		long key = 0;
+		for (Ticket ticket : Ticket.values()) {
+			key ^= tickets(mrX.piece(), ticket, mrX.count(ticket));
+		}
+		for (Player detective : detectives) {
+			key ^= location(detective.piece(), detective.location());
+			for (Ticket ticket : Ticket.values()) {
+				key ^= tickets(detective.piece(), ticket, detective.count(ticket));
+			}
+		}
+		for (Piece piece : remaining) key ^= remaining(piece);
+		for (int i = 0; i < log.size(); i++) key ^= logEntry(i, log.get(i));
+		return key;
+	}
+
+	/**
+	 * Computes the key of any board from scratch.
+	 * <br>
+	 * A board does not say which players are yet to move, so they are taken from the available
+	 * moves: Mr X is always counted, and detectives are counted if they have a move. This matches
+	 * the game states' own keys unless a detective yet to move is stuck.
+	 *
+	 * @param board the board
+	 * @return the key
+	 */
+	public static long of(@Nonnull Board board) {
+		long key = remaining(Piece.MrX.MRX);
+		for (Piece piece : board.getPlayers()) {
+			Board.TicketBoard tickets = board.getPlayerTickets(piece).orElseThrow();
+			for (Ticket ticket : Ticket.values()) key ^= tickets(piece, ticket, tickets.getCount(ticket));
+			if (piece.isDetective())
+				key ^= location(piece, board.getDetectiveLocation((Detective) piece).orElseThrow());
+		}
+		Set<Piece> moving = board.getAvailableMoves().stream()
+				.map(Move::commencedBy)
+				.filter(Piece::isDetective)
+				.collect(Collectors.toSet());
+		for (Piece piece : moving) key ^= remaining(piece);
+		List<LogEntry> log = board.getMrXTravelLog();
+		for (int i = 0; i < log.size(); i++) key ^= logEntry(i, log.get(i));
+		return key;
+	}
+}
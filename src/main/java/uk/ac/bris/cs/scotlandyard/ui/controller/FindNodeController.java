@@ -74,7 +74,7 @@ import static java.util.stream.Collectors.toList;
 			List<String> failed = new ArrayList<>();
 			for (String item : items) {
 				Optional<Integer> optional = maybeInteger(item)
-						.flatMap(i -> manager.getGraph().nodes().contains(i) ? of(i) : empty());
+						.flatMap(i -> manager.getCompiledGraph().index(i) != -1 ? of(i) : empty());
 				optional.ifPresent(highlights::add);
 				if (optional.isEmpty()) failed.add(item);
 			}
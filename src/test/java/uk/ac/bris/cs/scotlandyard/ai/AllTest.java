@@ -0,0 +1,17 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all tests for the shipped Ais
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		MonteCarloAiTest.class,
+		AlphaBetaAiTest.class,
+		InformationSetAiTest.class,
+		OpeningBookTest.class,
+		DeadlineTest.class
+})
+public class AllTest {}
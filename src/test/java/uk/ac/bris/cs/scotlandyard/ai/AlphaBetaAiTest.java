@@ -0,0 +1,125 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SeededStart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the alpha-beta Ai avoids capture and stops on time
+ */
+public class AlphaBetaAiTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static Pair<Long, TimeUnit> millis(long millis) { return new Pair<>(millis, TimeUnit.MILLISECONDS); }
+
+	// Allowed past the timeout for a loaded machine to hand the move over, when the search stops is
+	// tested exactly in DeadlineTest
+	private static long late(long millis) { return TimeUnit.MILLISECONDS.toNanos(millis + 250); }
+
+	@Test public void testMrXDoesNotMoveNextToDetective() {
+		// Taxis from 1 go to 8 and 9, RED at 18 can reach 8 but not 9
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(graph, ImmutableList.of(false, false, false)),
+				new Player(MRX, ImmutableMap.of(TAXI, 1), 1),
+				ImmutableList.of(new Player(RED, ImmutableMap.of(TAXI, 3), 18)));
+		AlphaBetaAi ai = new AlphaBetaAi(2);
+		ai.onStart();
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, millis(1000));
+		assertThat(System.nanoTime() - start).isLessThan(late(1000));
+		assertThat(move).isEqualTo(new Move.SingleMove(MRX, 1, TAXI, 9));
+		assertThat(ai.depth()).isGreaterThanOrEqualTo(2);
+		assertThat(ai.nodesPerSecond()).isPositive();
+		ai.onTerminate();
+	}
+
+	@Test public void testRootIsSearchedDespiteDeeperTableEntry() {
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(graph, ImmutableList.of(false, false, false)),
+				new Player(MRX, ImmutableMap.of(TAXI, 1), 1),
+				ImmutableList.of(new Player(RED, ImmutableMap.of(TAXI, 3), 18)));
+		AlphaBetaAi ai = new AlphaBetaAi(1);
+		ai.onStart();
+		// An exact result deeper than any iteration, wrongly moving next to RED
+		long key = SearchState.of(state, 1).getPositionKey();
+		ai.table().store(key, 255, 0, TranspositionTable.EXACT, PackedMove.pack(new Move.SingleMove(MRX, 1, TAXI, 8)));
+		assertThat(ai.pickMove(state, millis(300))).isEqualTo(new Move.SingleMove(MRX, 1, TAXI, 9));
+		assertThat(ai.depth()).isGreaterThanOrEqualTo(2);
+		ai.onTerminate();
+	}
+
+	@Test public void testPlaysBothSidesOnTime() {
+		GameState state = new MyGameStateFactory().build(new GameSetup(graph, ScotlandYard.STANDARD24MOVES),
+				SeededStart.mrX(9), SeededStart.detectives(9, 5));
+		AlphaBetaAi ai = new AlphaBetaAi(2);
+		ai.onStart();
+		for (int ply = 0; ply < 12 && state.getWinner().isEmpty(); ply++) {
+			long start = System.nanoTime();
+			Move move = ai.pickMove(state, millis(500));
+			assertThat(System.nanoTime() - start).isLessThan(late(500));
+			assertThat(state.getAvailableMoves()).contains(move);
+			state = state.advance(move);
+		}
+		ai.onTerminate();
+	}
+
+	@Test public void testDetectivesCloseInOnRevealedMrX() {
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(graph, ImmutableList.of(true, false, false)),
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 18),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		state = state.advance(new Move.SingleMove(MRX, 1, TAXI, 8));
+		assertThat(new AlphaBetaAi(1).pickMove(state, millis(100)))
+				.isEqualTo(new Move.SingleMove(RED, 18, TAXI, 8));
+	}
+
+	@Test public void testDetectivesChaseWhenNoStationFitsTheLog() {
+		// No MRX_LOCATIONS station has an underground line, so the hidden move rules out every station
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(graph, ImmutableList.of(false, false, false)),
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 13),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		state = state.advance(new Move.SingleMove(MRX, 1, UNDERGROUND, 46));
+		// Started anywhere free, Mr X is at an underground station, 13 is one
+		assertThat(new AlphaBetaAi(1).pickMove(state, millis(100)))
+				.isIn(new Move.SingleMove(RED, 13, UNDERGROUND, 46),
+						new Move.SingleMove(RED, 13, UNDERGROUND, 67),
+						new Move.SingleMove(RED, 13, UNDERGROUND, 89));
+	}
+}
@@ -0,0 +1,56 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests when searches are told to stop, independent of how long a machine takes to stop them
+ */
+public class DeadlineTest {
+
+	// The time left until the deadline for a timeout, within the time taken to compute it
+	private static void assertLeaves(long timeout, TimeUnit unit, long expectedMillis) {
+		long before = System.nanoTime();
+		long deadline = Deadline.of(new Pair<>(timeout, unit));
+		long after = System.nanoTime();
+		long expected = TimeUnit.MILLISECONDS.toNanos(expectedMillis);
+		assertThat(deadline - before).isGreaterThanOrEqualTo(expected);
+		assertThat(deadline - after).isLessThanOrEqualTo(expected);
+	}
+
+	@Test public void testReservesATenthOfTheTime() {
+		assertLeaves(2, TimeUnit.SECONDS, 1800);
+		assertLeaves(10, TimeUnit.SECONDS, 9000);
+	}
+
+	@Test public void testReservesAtLeast50ms() {
+		assertLeaves(500, TimeUnit.MILLISECONDS, 450);
+		assertLeaves(200, TimeUnit.MILLISECONDS, 150);
+	}
+
+	@Test public void testReservesAtMostHalfTheTime() {
+		assertLeaves(60, TimeUnit.MILLISECONDS, 30);
+		assertLeaves(2, TimeUnit.MILLISECONDS, 1);
+	}
+
+	@Test public void testPassed() {
+		long now = System.nanoTime();
+		assertThat(Deadline.passed(now)).isTrue();
+		assertThat(Deadline.passed(now - 1)).isTrue();
+		assertThat(Deadline.passed(now + TimeUnit.SECONDS.toNanos(10))).isFalse();
+	}
+
+	@Test public void testInvalidTimeoutThrows() {
+		assertThatThrownBy(() -> Deadline.of(null)).isInstanceOf(NullPointerException.class);
+		assertThatThrownBy(() -> Deadline.of(new Pair<>(0L, TimeUnit.MILLISECONDS)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> Deadline.of(new Pair<>(-1L, TimeUnit.SECONDS)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,132 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.ResourceManager;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SeededStart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the information set Ai shares statistics across determinizations and moves on time
+ */
+public class InformationSetAiTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static Pair<Long, TimeUnit> millis(long millis) { return new Pair<>(millis, TimeUnit.MILLISECONDS); }
+
+	// Allowed past the timeout for a loaded machine to hand the move over, when the search stops is
+	// tested exactly in DeadlineTest
+	private static long late(long millis) { return TimeUnit.MILLISECONDS.toNanos(millis + 250); }
+
+	@Test public void testDetectivesCaptureRevealedMrX() {
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(graph, ImmutableList.of(true, false, false, false)),
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 18),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		state = state.advance(new Move.SingleMove(MRX, 1, TAXI, 8));
+		InformationSetAi ai = new InformationSetAi(2);
+		ai.onStart();
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, millis(500));
+		assertThat(System.nanoTime() - start).isLessThan(late(500));
+		assertThat(move).isEqualTo(new Move.SingleMove(RED, 18, TAXI, 8));
+		assertThat(ai.determinizationsPerSecond()).isPositive();
+		assertThat(ai.simulationsPerSecond()).isGreaterThan(ai.determinizationsPerSecond());
+		ai.onTerminate();
+	}
+
+	@Test public void testBothSidesPickAvailableMovesOnTime() {
+		GameState state = new MyGameStateFactory().build(new GameSetup(graph, ScotlandYard.STANDARD24MOVES),
+				SeededStart.mrX(6), SeededStart.detectives(6, 5));
+		InformationSetAi ai = new InformationSetAi(2);
+		ai.onStart();
+		for (int ply = 0; ply < 4 && state.getWinner().isEmpty(); ply++) {
+			long start = System.nanoTime();
+			Move move = ai.pickMove(state, millis(1000));
+			assertThat(System.nanoTime() - start).isLessThan(late(1000));
+			assertThat(state.getAvailableMoves()).contains(move);
+			state = state.advance(move);
+		}
+		ai.onTerminate();
+	}
+
+	@Test public void testDeterminizationsShareDetectiveNodes() {
+		GameState board = new MyGameStateFactory().build(new GameSetup(graph, ScotlandYard.STANDARD24MOVES),
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 13)))
+				.advance(new Move.SingleMove(MRX, 45, TAXI, 46));
+		InformationSetTree tree = new InformationSetTree(true);
+		InformationSetTree.Searcher searcher = tree.new Searcher(new SplittableRandom(1));
+		// Mr X could have taken a taxi to 32 or 46 as far as RED knows
+		SearchState first = SearchState.of(board, 46), second = SearchState.of(board, 32);
+		assertThat(tree.key(first)).isEqualTo(tree.key(second));
+		for (int i = 0; i < 100; i++) {
+			searcher.simulate(first);
+			searcher.simulate(second);
+		}
+		assertThat(searcher.simulations()).isEqualTo(200);
+		int visits = 0;
+		for (Move move : board.getAvailableMoves()) {
+			first.make(move);
+			visits += tree.visits(tree.key(first));
+			first.unmake();
+		}
+		assertThat(visits).isEqualTo(200);
+		assertThat(tree.size()).isGreaterThan(board.getAvailableMoves().size());
+	}
+
+	@Test public void testDetectivesMoveWhenNoStationFitsTheLog() {
+		// No MRX_LOCATIONS station has an underground line, so the hidden move rules out every station
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(graph, ImmutableList.of(false, false, false, false)),
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 13),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		state = state.advance(new Move.SingleMove(MRX, 1, UNDERGROUND, 46));
+		InformationSetAi ai = new InformationSetAi(2);
+		ai.onStart();
+		for (int ply = 0; ply < 2 && state.getWinner().isEmpty(); ply++) {
+			Move move = ai.pickMove(state, millis(200));
+			assertThat(state.getAvailableMoves()).contains(move);
+			state = state.advance(move);
+		}
+		ai.onTerminate();
+	}
+
+	@Test public void testAiIsDiscoverable() {
+		assertThat(ResourceManager.scanAis()).anyMatch(ai -> ai instanceof InformationSetAi);
+	}
+}
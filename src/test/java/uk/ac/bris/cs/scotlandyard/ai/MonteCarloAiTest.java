@@ -0,0 +1,127 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.ResourceManager;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SeededStart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the Monte Carlo Ai picks sensible moves on time
+ */
+public class MonteCarloAiTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static Pair<Long, TimeUnit> millis(long millis) { return new Pair<>(millis, TimeUnit.MILLISECONDS); }
+
+	// Allowed past the timeout for a loaded machine to hand the move over, when the search stops is
+	// tested exactly in DeadlineTest
+	private static long late(long millis) { return TimeUnit.MILLISECONDS.toNanos(millis + 250); }
+
+	@Test public void testDetectivesCaptureRevealedMrX() {
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(graph, ImmutableList.of(true, false, false, false)),
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 18),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		state = state.advance(new Move.SingleMove(MRX, 1, TAXI, 8));
+		MonteCarloAi ai = new MonteCarloAi(2);
+		ai.onStart();
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, millis(500));
+		assertThat(System.nanoTime() - start).isLessThan(late(500));
+		assertThat(move).isEqualTo(new Move.SingleMove(RED, 18, TAXI, 8));
+		assertThat(ai.simulationsPerSecond()).isPositive();
+		ai.onTerminate();
+	}
+
+	@Test public void testMrXPicksAvailableMovesOnTime() {
+		GameState state = new MyGameStateFactory().build(new GameSetup(graph, ScotlandYard.STANDARD24MOVES),
+				SeededStart.mrX(4), SeededStart.detectives(4, 5));
+		MonteCarloAi ai = new MonteCarloAi(2);
+		ai.onStart();
+		// Both sides from the same instance, as when one Ai is picked for both in the UI
+		for (int ply = 0; ply < 4 && state.getWinner().isEmpty(); ply++) {
+			long start = System.nanoTime();
+			Move move = ai.pickMove(state, millis(1000));
+			assertThat(System.nanoTime() - start).isLessThan(late(1000));
+			assertThat(state.getAvailableMoves()).contains(move);
+			state = state.advance(move);
+		}
+		ai.onTerminate();
+	}
+
+	@Test public void testTreeIsReusedForLaterStates() {
+		var detectives = ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 13));
+		SearchState state = SearchState.of(new GameSetup(graph, ScotlandYard.STANDARD24MOVES),
+				new Player(MRX, defaultMrXTickets(), 45), detectives);
+		MonteCarloTree tree = new MonteCarloTree(new SplittableRandom(1));
+		assertThat(tree.reroot(state)).isFalse();
+		for (int i = 0; i < 5000; i++) tree.simulate();
+		Map<Long, Integer> visits = new HashMap<>();
+		tree.addRootVisits(visits);
+		long best = visits.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow().getKey();
+		SearchState next = SearchState.of(new GameSetup(graph, ScotlandYard.STANDARD24MOVES),
+				new Player(MRX, defaultMrXTickets(), 45), detectives);
+		next.make(best);
+		assertThat(tree.reroot(next)).isTrue();
+		assertThat(tree.rootVisits()).isEqualTo(visits.get(best));
+		assertThat(tree.nodes()).isGreaterThan(1);
+	}
+
+	@Test public void testDetectivesMoveWhenNoStationFitsTheLog() {
+		// No MRX_LOCATIONS station has an underground line, so the hidden move rules out every station
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(graph, ImmutableList.of(false, false, false, false)),
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 13),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		state = state.advance(new Move.SingleMove(MRX, 1, UNDERGROUND, 46));
+		MonteCarloAi ai = new MonteCarloAi(2);
+		ai.onStart();
+		for (int ply = 0; ply < 2 && state.getWinner().isEmpty(); ply++) {
+			Move move = ai.pickMove(state, millis(200));
+			assertThat(state.getAvailableMoves()).contains(move);
+			state = state.advance(move);
+		}
+		ai.onTerminate();
+	}
+
+	@Test public void testAiIsDiscoverable() {
+		assertThat(ResourceManager.scanAis()).anyMatch(ai -> ai instanceof MonteCarloAi);
+	}
+}
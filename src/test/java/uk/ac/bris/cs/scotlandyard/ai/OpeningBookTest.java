@@ -0,0 +1,120 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SeededStart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests opening books are written, mapped back and looked up, see OpeningBookBenchmark for how quickly
+ */
+public class OpeningBookTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static GameState start(GameSetup setup, int seed, int detectives) {
+		return new MyGameStateFactory().build(setup, SeededStart.mrX(seed), SeededStart.detectives(seed, detectives));
+	}
+
+	@Test public void testBookReplaysTheOpeningsItWasBuiltFrom() throws IOException {
+		GameSetup setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		AlphaBetaAi mrX = new AlphaBetaAi(1);
+		InformationSetAi detectives = new InformationSetAi(1);
+		OpeningBookBuilder builder = new OpeningBookBuilder(setup, 1,
+				new Pair<>(100L, TimeUnit.MILLISECONDS), mrX, detectives);
+		for (int seed = 0; seed < 2; seed++) builder.addStandard(seed, 2);
+		mrX.onTerminate();
+		detectives.onTerminate();
+		assertThat(builder.size()).isEqualTo(2 * 3);
+		Path file = folder.getRoot().toPath().resolve("book.bin");
+		builder.write(file);
+		assertThat(Files.size(file)).isEqualTo(OpeningBook.HEADER + 6 * 16);
+
+		OpeningBook book = OpeningBook.load(file);
+		assertThat(book.size()).isEqualTo(6);
+		for (int seed = 0; seed < 2; seed++) {
+			GameState state = start(setup, seed, 2);
+			for (int ply = 0; ply < 3; ply++) {
+				Optional<Move> move = book.lookup(state);
+				assertThat(move).as("seed %d, ply %d", seed, ply).isPresent();
+				assertThat(state.getAvailableMoves()).contains(move.orElseThrow());
+				state = state.advance(move.orElseThrow());
+			}
+			// Past the rounds in the book
+			assertThat(book.lookup(state)).isEmpty();
+		}
+		// Out of the book, from a start configuration it was not built from
+		assertThat(book.lookup(start(setup, 7, 2))).isEmpty();
+	}
+
+	@Test public void testBookForAnotherGraphIsNotUsed() throws IOException {
+		var other = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 3, ImmutableSet.of(Transport.TAXI))
+				.build();
+		GameSetup setup = new GameSetup(other, ImmutableList.of(false, false));
+		var red = new Player(RED, defaultDetectiveTickets(), 3);
+		AlphaBetaAi ai = new AlphaBetaAi(1);
+		OpeningBookBuilder builder = new OpeningBookBuilder(setup, 1,
+				new Pair<>(100L, TimeUnit.MILLISECONDS), ai, ai);
+		builder.add(new Player(MRX, defaultMrXTickets(), 1), ImmutableList.of(red));
+		ai.onTerminate();
+		Path file = folder.getRoot().toPath().resolve("other.bin");
+		builder.write(file);
+		OpeningBook book = OpeningBook.load(file);
+		assertThat(book.size()).isPositive();
+		GameState state = new MyGameStateFactory().build(setup, new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(red));
+		assertThat(book.lookup(state)).isPresent();
+		// The same pieces on the standard graph
+		GameState standard = new MyGameStateFactory().build(new GameSetup(graph, ImmutableList.of(false, false)),
+				new Player(MRX, defaultMrXTickets(), 1), ImmutableList.of(red));
+		assertThat(book.lookup(standard)).isEmpty();
+	}
+
+	@Test public void testLoadRejectsOtherFiles() throws IOException {
+		Path file = folder.newFile("book.bin").toPath();
+		Files.write(file, new byte[]{1, 2, 3});
+		assertThatThrownBy(() -> OpeningBook.load(file)).isInstanceOf(IOException.class);
+	}
+
+	@Test public void testStandardBookIsEmptyWithoutProperty() {
+		if (System.getProperty(OpeningBook.BOOK_PROPERTY) == null)
+			assertThat(OpeningBook.standard().size()).isZero();
+	}
+}
@@ -0,0 +1,63 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.ai.AlphaBetaAi;
+import uk.ac.bris.cs.scotlandyard.ai.OpeningBook;
+import uk.ac.bris.cs.scotlandyard.ai.OpeningBookBuilder;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SeededStart;
+
+/**
+ * Builds a small opening book and prints how long looking up a position in it and a position out
+ * of it takes, which Ais do before every move.
+ * <br>
+ * Not a test; run the main method from the test classpath.
+ */
+public final class OpeningBookBenchmark {
+
+	private static final int SEEDS = 4;
+	private static final int LOOKUPS = 1_000_000;
+
+	public static void main(String[] args) throws IOException {
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		AlphaBetaAi ai = new AlphaBetaAi(1);
+		OpeningBookBuilder builder = new OpeningBookBuilder(setup, 1,
+				new Pair<>(100L, TimeUnit.MILLISECONDS), ai, ai);
+		for (int seed = 0; seed < SEEDS; seed++) builder.addStandard(seed, 5);
+		ai.onTerminate();
+		Path file = Files.createTempFile("book", ".bin");
+		try {
+			builder.write(file);
+			OpeningBook book = OpeningBook.load(file);
+			System.out.printf("%d entries%n", book.size());
+			time("in the book", book, start(setup, 0));
+			time("out of the book", book, start(setup, SEEDS));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static GameState start(GameSetup setup, int seed) {
+		return new MyGameStateFactory().build(setup, SeededStart.mrX(seed), SeededStart.detectives(seed, 5));
+	}
+
+	private static void time(String name, OpeningBook book, GameState state) {
+		for (int i = 0; i < LOOKUPS; i++) book.lookup(state); // Warm up
+		long start = System.nanoTime();
+		int found = 0;
+		for (int i = 0; i < LOOKUPS; i++) {
+			if (book.lookup(state).isPresent()) found++;
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%s: %,.0f ns/lookup (%d found)%n", name, (double) elapsed / LOOKUPS, found);
+	}
+}
@@ -0,0 +1,74 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.PlayoutEngine;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SeededStart;
+
+/**
+ * Runs random playouts from the start of standard games on one engine per thread, for 1 thread up
+ * to one per core, and prints the combined plies and games per second.
+ * <br>
+ * Not a test; run the main method from the test classpath.
+ */
+public final class PlayoutBenchmark {
+
+	private static final long MILLIS = 2000;
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		int cores = Runtime.getRuntime().availableProcessors();
+		SplittableRandom random = new SplittableRandom(42);
+		run(setup, 1, random); // Warm up
+		double single = 0;
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			double[] rates = run(setup, threads, random);
+			if (threads == 1) single = rates[0];
+			System.out.printf("%2d threads: %,14.0f plies/s %,12.0f games/s (%.1fx)%n",
+					threads, rates[0], rates[1], rates[0] / single);
+		}
+	}
+
+	// Plays for a while on each thread, returning the total plies and games per second
+	private static double[] run(GameSetup setup, int threads, SplittableRandom random)
+			throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<PlayoutEngine>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				PlayoutEngine engine = new PlayoutEngine(random.split());
+				int seed = i;
+				futures.add(executor.submit(() -> {
+					SearchState state = start(setup, seed);
+					long end = System.currentTimeMillis() + MILLIS;
+					while (System.currentTimeMillis() < end) {
+						for (int game = 0; game < 100; game++) engine.play(state);
+					}
+					return engine;
+				}));
+			}
+			double plies = 0, games = 0;
+			for (Future<PlayoutEngine> future : futures) {
+				plies += future.get().pliesPerSecond();
+				games += future.get().gamesPerSecond();
+			}
+			return new double[] { plies, games };
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static SearchState start(GameSetup setup, int seed) {
+		return SearchState.of(setup, SeededStart.mrX(seed), SeededStart.detectives(seed, 5));
+	}
+}
@@ -0,0 +1,101 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.SeededStart;
+
+/**
+ * Replays recorded random games and compares advancing with the move legality check against
+ * validating every move by generating {@link GameState#getAvailableMoves()} first, which is what
+ * {@link GameState#advance(Move)} used to do.
+ * <br>
+ * Not a test; run the main method from the test classpath.
+ */
+public final class ReplayBenchmark {
+
+	private static final int GAMES = 200;
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) throws IOException {
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		List<Supplier<Factory<GameState>>> factories = List.of(
+				MyGameStateFactory::new, BitboardGameStateFactory::new);
+		for (Supplier<Factory<GameState>> factory : factories) {
+			List<Game> games = record(factory.get(), setup);
+			long plies = games.stream().mapToLong(g -> g.moves.size()).sum();
+			System.out.printf("%s: %d recorded games, %d plies%n",
+					factory.get().getClass().getSimpleName(), games.size(), plies);
+			for (int warmup = 0; warmup < 3; warmup++) {
+				replay(games, true);
+				replay(games, false);
+			}
+			long generating = 0, checking = 0;
+			for (int round = 0; round < ROUNDS; round++) {
+				generating += replay(games, true);
+				checking += replay(games, false);
+			}
+			System.out.printf("  generate then advance: %,12.0f plies/s%n",
+					plies * ROUNDS / (generating / 1e9));
+			System.out.printf("  advance only:          %,12.0f plies/s (%.1fx)%n",
+					plies * ROUNDS / (checking / 1e9), (double) generating / checking);
+		}
+	}
+
+	private static final class Game {
+		final GameState start;
+		final ImmutableList<Move> moves;
+		Game(GameState start, ImmutableList<Move> moves) {
+			this.start = start;
+			this.moves = moves;
+		}
+	}
+
+	// Plays random games to completion and records their moves
+	private static List<Game> record(Factory<GameState> factory, GameSetup setup) {
+		List<Game> games = new ArrayList<>();
+		for (int seed = 0; seed < GAMES; seed++) {
+			Random random = new Random(seed);
+			GameState start = factory.build(setup, SeededStart.mrX(seed), SeededStart.detectives(seed, 5));
+			var moves = ImmutableList.<Move>builder();
+			GameState state = start;
+			while (state.getWinner().isEmpty()) {
+				var available = state.getAvailableMoves().asList();
+				Move move = available.get(random.nextInt(available.size()));
+				moves.add(move);
+				state = state.advance(move);
+			}
+			games.add(new Game(start, moves.build()));
+		}
+		return games;
+	}
+
+	// Replays all games and returns the time taken in nanoseconds
+	private static long replay(List<Game> games, boolean generate) {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (Game game : games) {
+			GameState state = game.start;
+			for (Move move : game.moves) {
+				if (generate && !state.getAvailableMoves().contains(move))
+					throw new AssertionError("Recorded move " + move + " is not available");
+				state = state.advance(move);
+			}
+			sink += state.getMrXTravelLog().size();
+		}
+		if (sink < 0) throw new AssertionError();
+		return System.nanoTime() - start;
+	}
+}
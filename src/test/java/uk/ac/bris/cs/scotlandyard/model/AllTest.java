@@ -15,6 +15,22 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
-		ModelObserverTest.class
+		ModelObserverTest.class,
+		CompiledGraphTest.class,
+		SearchStateTest.class,
+		ZobristTest.class,
+		PackedMoveTest.class,
+		MovePoolTest.class,
+		PlayerTest.class,
+		TravelLogTest.class,
+		MoveSpliteratorTest.class,
+		MoveSetTest.class,
+		TwoHopTableTest.class,
+		MrXCandidatesTest.class,
+		MrXDistributionTest.class,
+		DistanceTableTest.class,
+		TicketReachabilityTest.class,
+		PlayoutEngineTest.class,
+		JointMovesTest.class
 })
 public class AllTest {}
@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+
+/**
+ * Tests the compiled graph against the Guava graph it was compiled from
+ */
+public class CompiledGraphTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	@Test public void testEqualsSourceGraph() {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		assertThat(compiled).isEqualTo(graph);
+		assertThat(graph).isEqualTo(compiled);
+		assertThat(compiled.hashCode()).isEqualTo(graph.hashCode());
+	}
+
+	@Test public void testEdgesMatchSourceGraph() {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		assertThat(compiled.size()).isEqualTo(graph.nodes().size());
+		for (int node : graph.nodes()) {
+			int index = compiled.indexOf(node);
+			assertThat(compiled.node(index)).isEqualTo(node);
+			assertThat(compiled.end(index) - compiled.start(index))
+					.isEqualTo(graph.adjacentNodes(node).size());
+			for (int edge = compiled.start(index); edge < compiled.end(index); edge++) {
+				int target = compiled.node(compiled.target(edge));
+				assertThat(compiled.edgeValueOrDefault(node, target, ImmutableSet.of()))
+						.isEqualTo(graph.edgeValueOrDefault(node, target, ImmutableSet.of()));
+				assertThat(compiled.edge(index, compiled.target(edge))).isEqualTo(edge);
+			}
+		}
+	}
+
+	@Test public void testTicketNeighboursMatchEdgeValues() {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		for (int node : graph.nodes()) {
+			int index = compiled.indexOf(node);
+			for (Ticket ticket : Ticket.values()) {
+				var expected = graph.adjacentNodes(node).stream()
+						.filter(n -> ticket == Ticket.SECRET || graph.edgeValueOrDefault(node, n,
+								ImmutableSet.of()).stream().anyMatch(t -> t.requiredTicket() == ticket))
+						.collect(ImmutableSet.toImmutableSet());
+				var actual = ImmutableSet.<Integer>builder();
+				for (int i = compiled.start(ticket, index); i < compiled.end(ticket, index); i++) {
+					actual.add(compiled.node(compiled.target(ticket, i)));
+				}
+				assertThat(actual.build()).as("%s neighbours of %s", ticket, node)
+						.isEqualTo(expected);
+			}
+		}
+	}
+
+	@Test public void testSharedBetweenSetupsOfTheSameGraph() {
+		assertThat(CompiledGraph.of(new GameSetup(graph, STANDARD24MOVES)))
+				.isSameAs(CompiledGraph.of(new GameSetup(graph, STANDARD24MOVES)))
+				.isSameAs(CompiledGraph.of(graph));
+	}
+
+	@Test public void testStationNotOnGraph() {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		assertThat(compiled.index(0)).isEqualTo(-1);
+		assertThat(compiled.index(1000)).isEqualTo(-1);
+		assertThatThrownBy(() -> compiled.adjacentNodes(1000))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
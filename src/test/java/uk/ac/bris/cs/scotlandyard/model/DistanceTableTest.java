@@ -0,0 +1,120 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the distance tables against a search of the graph they were built from
+ */
+public class DistanceTableTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	@Test public void testDistancesMatchSearch() {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		check(DistanceTable.all(compiled), EnumSet.allOf(Transport.class));
+		check(DistanceTable.detective(compiled), EnumSet.of(Transport.TAXI, Transport.BUS, Transport.UNDERGROUND));
+		for (Transport transport : Transport.values()) {
+			check(DistanceTable.of(compiled, transport), EnumSet.of(transport));
+		}
+		assertThat(DistanceTable.detective(compiled).transports()).doesNotContain(Transport.FERRY);
+		assertThat(DistanceTable.all(compiled)).isSameAs(DistanceTable.all(CompiledGraph.of(graph)));
+		assertThatThrownBy(() -> DistanceTable.all(compiled).distance(0, 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testNearestIsTheMinimumOverStations() {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		DistanceTable table = DistanceTable.detective(compiled);
+		long[] from = new long[compiled.words()];
+		for (int station : ImmutableList.of(13, 91, 155)) {
+			int index = compiled.indexOf(station);
+			from[index >>> 6] |= 1L << index;
+		}
+		for (int station : compiled.nodes()) {
+			int expected = Math.min(table.distance(13, station),
+					Math.min(table.distance(91, station), table.distance(155, station)));
+			assertThat(table.nearest(compiled.indexOf(station), from)).isEqualTo(expected);
+		}
+		assertThat(table.nearest(0, new long[compiled.words()])).isEqualTo(DistanceTable.UNREACHABLE);
+	}
+
+	@Test public void testTablesAreCachedOnDisk() throws IOException {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		Path directory = folder.getRoot().toPath().resolve("cache");
+		var built = DistanceTable.load(compiled, directory);
+		try (var files = Files.list(directory)) {
+			Path file = files.findFirst().orElseThrow();
+			var loaded = DistanceTable.load(compiled, directory);
+			assertThat(loaded.get(0).distance(1, 199)).isEqualTo(built.get(0).distance(1, 199));
+			// A damaged file is built again and replaced
+			Files.write(file, new byte[] { 1, 2, 3 });
+			var rebuilt = DistanceTable.load(compiled, directory);
+			assertThat(rebuilt.get(5).distance(1, 199)).isEqualTo(built.get(5).distance(1, 199));
+			assertThat(Files.size(file)).isGreaterThan(6L * 199 * 199);
+		}
+	}
+
+	@Test public void testNoTemporaryFileIsLeftWhenTheCacheCannotBeWritten() throws IOException {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		Path directory = folder.getRoot().toPath().resolve("cache");
+		// A non-empty directory in the way of the file cannot be replaced
+		Path file = directory.resolve("distances-" + compiled.fingerprint() + ".bin");
+		Files.createDirectories(file.resolve("in-the-way"));
+		var tables = DistanceTable.load(compiled, directory);
+		assertThat(tables.get(0).distance(1, 199)).isEqualTo(DistanceTable.all(compiled).distance(1, 199));
+		try (var files = Files.list(directory)) {
+			assertThat(files.map(f -> f.getFileName().toString())).noneMatch(name -> name.endsWith(".tmp"));
+		}
+	}
+
+	private static void check(DistanceTable table, Set<Transport> transports) {
+		assertThat(table.transports()).isEqualTo(transports);
+		for (int source : graph.nodes()) {
+			Map<Integer, Integer> expected = new HashMap<>();
+			ArrayDeque<Integer> queue = new ArrayDeque<>();
+			expected.put(source, 0);
+			queue.add(source);
+			while (!queue.isEmpty()) {
+				int node = queue.poll();
+				for (int next : graph.adjacentNodes(node)) {
+					var value = graph.edgeValueOrDefault(node, next, ImmutableSet.of());
+					if (value.stream().anyMatch(transports::contains) && !expected.containsKey(next)) {
+						expected.put(next, expected.get(node) + 1);
+						queue.add(next);
+					}
+				}
+			}
+			for (int target : graph.nodes()) {
+				assertThat(table.distance(source, target)).as("%d to %d", source, target)
+						.isEqualTo(expected.getOrDefault(target, DistanceTable.UNREACHABLE));
+			}
+		}
+	}
+}
@@ -1,10 +1,17 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import org.junit.Test;
 
+import java.util.Random;
+
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -107,4 +114,56 @@ public class GameStateMoveTest extends ParameterisedModelTestBase {
 				.isInstanceOf(IllegalArgumentException.class);
 	}
 
+	@Test public void testAdvanceAcceptsExactlyTheAvailableMoves() {
+		var mrX = new Player(MRX, makeTickets(4, 3, 3, 2, 1), 106);
+		var red = new Player(RED, makeTickets(4, 3, 2, 0, 0), 91);
+		var green = new Player(GREEN, defaultDetectiveTickets(), 29);
+		var blue = new Player(BLUE, makeTickets(2, 8, 1, 0, 0), 94);
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(false, true, false, false, true, false, false)),
+				mrX, red, green, blue);
+		var random = new Random(42);
+		int mrXLocation = mrX.location();
+		while (state.getWinner().isEmpty()) {
+			var available = state.getAvailableMoves();
+			for (Move move : candidateMoves(state, mrXLocation)) {
+				final GameState current = state;
+				if (available.contains(move)) current.advance(move);
+				else assertThatThrownBy(() -> current.advance(move))
+						.as("advancing with %s", move)
+						.isInstanceOf(IllegalArgumentException.class);
+			}
+			Move chosen = available.asList().get(random.nextInt(available.size()));
+			if (chosen.commencedBy().isMrX())
+				mrXLocation = chosen.accept(new FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+			state = state.advance(chosen);
+		}
+		final GameState over = state;
+		for (Move move : candidateMoves(over, mrXLocation)) {
+			assertThatThrownBy(() -> over.advance(move)).isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	// Every move to or through a neighbouring station with any ticket, legal or not
+	private static ImmutableList<Move> candidateMoves(GameState state, int mrXLocation) {
+		var moves = ImmutableList.<Move>builder();
+		for (Piece piece : state.getPlayers()) {
+			int source = piece.isMrX() ? mrXLocation
+					: state.getDetectiveLocation((Piece.Detective) piece).orElseThrow();
+			for (int first : standardGraph().adjacentNodes(source)) {
+				for (Ticket ticket1 : Ticket.values()) {
+					moves.add(new SingleMove(piece, source, ticket1, first));
+					moves.add(new SingleMove(piece, source + 1, ticket1, first));
+					for (int second : standardGraph().adjacentNodes(first)) {
+						for (Ticket ticket2 : Ticket.values()) {
+							if (ticket1 == Ticket.DOUBLE || ticket2 == Ticket.DOUBLE) continue;
+							moves.add(new DoubleMove(piece, source, ticket1, first, ticket2, second));
+						}
+					}
+				}
+			}
+		}
+		return moves.build();
+	}
+
 }
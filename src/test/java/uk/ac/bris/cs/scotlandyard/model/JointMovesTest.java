@@ -0,0 +1,148 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests joint moves reach exactly the positions that every order of detective moves reaches
+ */
+public class JointMovesTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	@Test public void testMatchesEveryOrderOfDetectiveMoves() {
+		for (int seed = 0; seed < 40; seed++) {
+			Random random = new Random(seed);
+			ImmutableList<Player> detectives = SeededStart.detectives(seed, 1 + seed % 5, () -> ImmutableMap.of(
+					TAXI, random.nextInt(6), BUS, random.nextInt(3), UNDERGROUND, random.nextInt(2)));
+			GameSetup setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+			Player mrX = SeededStart.mrX(seed);
+			GameState state = new MyGameStateFactory().build(setup, mrX, detectives);
+			SearchState search = SearchState.of(setup, mrX, detectives);
+			while (state.getWinner().isEmpty()) {
+				if (!search.isMrXTurn()) assertMatchesEveryOrder(state, search, "seed " + seed);
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				state = state.advance(move);
+				search.make(move);
+			}
+		}
+	}
+
+	@Test public void testDetectivesMovingOntoStationsOthersLeave() {
+		// RED is between YELLOW and BLUE, and BLUE and GREEN are next to Mr X on 9
+		GameSetup setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+		var detectives = ImmutableList.of(
+				new Player(RED, ImmutableMap.of(TAXI, 2), 8),
+				new Player(BLUE, ImmutableMap.of(TAXI, 2), 19),
+				new Player(GREEN, ImmutableMap.of(TAXI, 2), 20),
+				new Player(YELLOW, ImmutableMap.of(TAXI, 2), 18));
+		GameState state = new MyGameStateFactory().build(setup, mrX, detectives)
+				.advance(new Move.SingleMove(MRX, 1, TAXI, 9));
+		SearchState search = SearchState.of(setup, mrX, detectives);
+		search.make(new Move.SingleMove(MRX, 1, TAXI, 9));
+		List<MoveList> joint = assertMatchesEveryOrder(state, search, "cluster");
+		// RED can follow YELLOW onto 18, but YELLOW and RED cannot swap
+		Move red = new Move.SingleMove(RED, 8, TAXI, 18);
+		assertThat(joint).anyMatch(moves -> moves.toMoves().contains(red)).allMatch(moves -> {
+			List<Piece> pieces = moves.toMoves().stream().map(Move::commencedBy).toList();
+			return !moves.toMoves().contains(red) || pieces.indexOf(YELLOW) != -1
+					&& pieces.indexOf(YELLOW) < moves.toMoves().indexOf(red);
+		});
+		assertThat(joint).noneMatch(moves -> moves.toMoves().containsAll(List.of(
+				new Move.SingleMove(YELLOW, 18, TAXI, 8), new Move.SingleMove(RED, 8, TAXI, 18))));
+		// A capture ends the round, so it comes last
+		assertThat(joint).allMatch(moves -> moves.toMoves().subList(0, moves.size() - 1).stream()
+				.noneMatch(move -> move.accept(new Move.FunctionalVisitor<>(m -> m.destination, m -> 0)) == 9));
+	}
+
+	@Test public void testMakeIsTakenBackAtOnce() {
+		GameSetup setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+		var detectives = ImmutableList.of(
+				new Player(RED, ImmutableMap.of(TAXI, 2), 8),
+				new Player(BLUE, ImmutableMap.of(TAXI, 2), 19));
+		SearchState search = SearchState.of(setup, mrX, detectives);
+		search.make(new Move.SingleMove(MRX, 1, TAXI, 9));
+		long key = search.getPositionKey();
+		JointMoves joint = new JointMoves();
+		joint.reset(search);
+		int count = 0;
+		while (joint.next()) {
+			search.make(joint.moves());
+			assertThat(search.depth()).isEqualTo(1 + joint.moves().size());
+			search.unmake();
+			assertThat(search.depth()).isOne();
+			assertThat(search.getPositionKey()).isEqualTo(key);
+			count++;
+		}
+		assertThat(count).isPositive();
+		assertThat(joint.next()).isFalse();
+		search.unmake();
+		joint.reset(search);
+		assertThat(joint.next()).as("Mr X to move").isFalse();
+	}
+
+	// Checks the joint moves reach each position reached by advancing detectives in any order once
+	private static List<MoveList> assertMatchesEveryOrder(GameState state, SearchState search, String name) {
+		Set<Long> expected = new HashSet<>();
+		addRoundEnds(state, new HashSet<>(), expected);
+		List<MoveList> joint = new ArrayList<>();
+		Set<Long> actual = new HashSet<>();
+		JointMoves moves = new JointMoves();
+		moves.reset(search);
+		while (moves.next()) {
+			MoveList copy = new MoveList();
+			for (int i = 0; i < moves.moves().size(); i++) copy.add(moves.moves().get(i));
+			joint.add(copy);
+			long key = JointMoves.advance(state, copy).getZobristKey();
+			search.make(copy);
+			assertThat(search.getZobristKey()).as(name).isEqualTo(key);
+			search.unmake();
+			actual.add(key);
+		}
+		assertThat(actual).as(name).hasSameSizeAs(joint).isEqualTo(expected);
+		return joint;
+	}
+
+	private static void addRoundEnds(GameState state, Set<Long> seen, Set<Long> ends) {
+		if (!seen.add(state.getZobristKey())) return;
+		if (!state.getWinner().isEmpty()
+				|| state.getAvailableMoves().iterator().next().commencedBy().isMrX()) {
+			ends.add(state.getZobristKey());
+			return;
+		}
+		for (Move move : state.getAvailableMoves()) addRoundEnds(state.advance(move), seen, ends);
+	}
+}
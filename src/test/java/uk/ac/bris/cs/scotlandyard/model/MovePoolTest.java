@@ -0,0 +1,73 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests that generated moves are shared through the move pool
+ */
+public class MovePoolTest extends ParameterisedModelTestBase {
+
+	@Test public void testGameStatesShareMoveInstances() {
+		GameState a = gameStateFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer());
+		GameState b = gameStateFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer());
+		Map<Move, Move> instances = new IdentityHashMap<>();
+		for (Move move : a.getAvailableMoves()) instances.put(move, move);
+		assertThat(b.getAvailableMoves()).allMatch(instances::containsKey);
+		assertThat(a.getAvailableMoves()).anyMatch(m -> m instanceof Move.DoubleMove);
+	}
+
+	@Test public void testSearchStateSharesMoveInstances() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer());
+		Map<Move, Move> instances = new IdentityHashMap<>();
+		for (Move move : state.getAvailableMoves()) instances.put(move, move);
+		assertThat(SearchState.of(state).getAvailableMoves()).allMatch(instances::containsKey);
+	}
+
+	@Test public void testInternReturnsEqualInstance() {
+		MovePool pool = MovePool.of(standard24MoveSetup());
+		Move move = new SingleMove(MRX, 35, Ticket.TAXI, 22);
+		Move interned = pool.intern(move);
+		assertThat(interned).isEqualTo(move);
+		assertThat(pool.intern(new SingleMove(MRX, 35, Ticket.TAXI, 22))).isSameAs(interned);
+		assertThat(pool.get(PackedMove.pack(move))).isSameAs(interned);
+	}
+
+	@Test public void testMovesOffTheGraphAreNotInterned() {
+		MovePool pool = MovePool.of(standard24MoveSetup());
+		Move move = new SingleMove(MRX, 35, Ticket.TAXI, 1);
+		assertThat(pool.intern(move)).isEqualTo(move);
+		assertThat(pool.intern(move)).isNotSameAs(pool.intern(move));
+	}
+
+	@Test public void testConcurrentInterningCreatesOneInstance() {
+		MovePool pool = MovePool.of(standard24MoveSetup());
+		Move move = new Move.DoubleMove(MRX, 106, Ticket.TAXI, 105, Ticket.BUS, 87);
+		Set<Move> instances = IntStream.range(0, 10_000).parallel()
+				.mapToObj(i -> pool.intern(move))
+				.collect(Collectors.toCollection(() -> Collections.newSetFromMap(new IdentityHashMap<>())));
+		assertThat(instances).hasSize(1);
+	}
+
+	@Test public void testFootprintGrowsWithInternedMoves() {
+		MovePool pool = MovePool.of(standard24MoveSetup());
+		gameStateFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer()).getAvailableMoves();
+		assertThat(pool.singleCount()).isPositive();
+		assertThat(pool.doubleCount()).isPositive();
+		assertThat(pool.estimatedBytes()).isGreaterThan(4L * pool.singleCount());
+		assertThat(pool.toString()).contains("single moves");
+	}
+}
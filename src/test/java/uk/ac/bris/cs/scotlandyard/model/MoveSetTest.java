@@ -0,0 +1,66 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+
+/**
+ * Tests the factored move set agrees with {@link Board#getAvailableMoves()}
+ */
+public class MoveSetTest extends ParameterisedModelTestBase {
+
+	@Test public void testMoveSetMatchesAvailableMovesOverRandomPlayouts() {
+		for (int seed = 0; seed < 40; seed++) {
+			Random random = new Random(seed);
+			GameState state = randomGame(random, seed);
+			// Moves seen earlier in the game, mostly no longer available
+			Set<Move> seen = new HashSet<>();
+			while (true) {
+				ImmutableSet<Move> moves = state.getAvailableMoves();
+				Set<Move> moveSet = state.getAvailableMoveSet();
+				assertThat(moveSet.size()).as("seed %d", seed).isEqualTo(moves.size());
+				assertThat(ImmutableSet.copyOf(moveSet.iterator())).isEqualTo(moves);
+				for (Move move : seen) {
+					assertThat(moveSet.contains(move)).as("seed %d, %s", seed, move)
+							.isEqualTo(moves.contains(move));
+				}
+				if (moves.isEmpty()) break;
+				seen.addAll(moves);
+				state = state.advance(moves.asList().get(random.nextInt(moves.size())));
+			}
+		}
+	}
+
+	@Test public void testDoubleMovesAreStoredAsLegs() {
+		// Secret tickets make every route a double move several ways
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, makeTickets(4, 3, 3, 2, 5), 67), redPlayer());
+		MoveSet moveSet = (MoveSet) state.getAvailableMoveSet();
+		assertThat(moveSet.doubleMoveCount()).isGreaterThan(10 * moveSet.firstLegCount());
+		assertThat(moveSet.singleMoves().size() + moveSet.doubleMoveCount())
+				.isEqualTo(state.getAvailableMoves().size());
+		assertThat(moveSet.contains(x2(MRX, 67, TAXI, 1, TAXI, 8))).isFalse();
+		assertThatThrownBy(() -> moveSet.add(taxi(MRX, 67, 84)))
+				.isInstanceOf(UnsupportedOperationException.class);
+	}
+
+	private GameState randomGame(Random random, int seed) {
+		ImmutableList<Player> detectives = SeededStart.detectives(seed, 1 + random.nextInt(5));
+		// Few tickets of each kind, so doubles of the same ticket are sometimes not allowed
+		Player mrX = SeededStart.mrX(seed, makeTickets(1 + random.nextInt(4), random.nextInt(3),
+				random.nextInt(3), random.nextInt(3), random.nextInt(3)));
+		return gameStateFactory.build(standard24MoveSetup(), mrX, detectives);
+	}
+}
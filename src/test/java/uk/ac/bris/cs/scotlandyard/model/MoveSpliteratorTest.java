@@ -0,0 +1,95 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests streaming moves from game states agrees with {@link Board#getAvailableMoves()}
+ */
+public class MoveSpliteratorTest extends ParameterisedModelTestBase {
+
+	@Test public void testStreamsMatchAvailableMovesOverRandomPlayouts() {
+		for (int seed = 0; seed < 40; seed++) {
+			Random random = new Random(seed);
+			GameState state = randomGame(random, seed);
+			while (true) {
+				ImmutableSet<Move> moves = state.getAvailableMoves();
+				assertThat(state.moves().collect(ImmutableSet.toImmutableSet())).as("seed %d", seed)
+						.isEqualTo(moves);
+				assertThat(state.moves().parallel().collect(ImmutableSet.toImmutableSet())).isEqualTo(moves);
+				assertThat(state.moves().count()).isEqualTo(moves.size());
+				assertThat(state.singleMoves().collect(ImmutableSet.toImmutableSet()))
+						.isEqualTo(moves.stream().filter(m -> m instanceof SingleMove)
+								.collect(ImmutableSet.toImmutableSet()));
+				for (Piece piece : state.getPlayers()) {
+					assertThat(state.moves(piece).collect(ImmutableSet.toImmutableSet()))
+							.isEqualTo(moves.stream().filter(m -> m.commencedBy() == piece)
+									.collect(ImmutableSet.toImmutableSet()));
+				}
+				if (moves.isEmpty()) break;
+				state = state.advance(moves.asList().get(random.nextInt(moves.size())));
+			}
+		}
+	}
+
+	@Test public void testSplitsKeepExactSizes() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, makeTickets(4, 3, 3, 2, 5), 67),
+				redPlayer());
+		Spliterator<Move> spliterator = state.moves().spliterator();
+		long size = spliterator.estimateSize();
+		assertThat(size).isEqualTo(state.getAvailableMoves().size());
+		assertThat(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED)).isTrue();
+
+		List<Spliterator<Move>> parts = new ArrayList<>(List.of(spliterator));
+		for (int i = 0; i < parts.size() && i < 4; i++) {
+			Spliterator<Move> prefix = parts.get(i).trySplit();
+			if (prefix != null) parts.add(prefix);
+		}
+		assertThat(parts.size()).isGreaterThan(1);
+		assertThat(parts.stream().mapToLong(Spliterator::estimateSize).sum()).isEqualTo(size);
+
+		List<Move> moves = new ArrayList<>();
+		for (Spliterator<Move> part : parts) {
+			long expected = part.estimateSize();
+			assertThat(part.tryAdvance(moves::add)).isEqualTo(expected > 0);
+			assertThat(part.estimateSize()).isEqualTo(Math.max(0, expected - 1));
+			part.forEachRemaining(moves::add);
+			assertThat(part.estimateSize()).isZero();
+		}
+		assertThat(moves).doesNotHaveDuplicates();
+		assertThat(ImmutableSet.copyOf(moves)).isEqualTo(state.getAvailableMoves());
+	}
+
+	@Test public void testNoMovesOnceTheGameIsOver() {
+		// Detectives without tickets lose straight away
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, makeTickets(1, 0, 0, 0, 0), 86),
+				new Player(RED, makeTickets(0, 0, 0, 0, 0), 103));
+		assertThat(state.getWinner()).containsExactly(MRX);
+		assertThat(state.moves().count()).isZero();
+		assertThat(state.moves(MRX).count()).isZero();
+	}
+
+	private GameState randomGame(Random random, int seed) {
+		ImmutableList<Player> detectives = SeededStart.detectives(seed, 1 + random.nextInt(5));
+		// Few tickets of each kind, so doubles of the same ticket are sometimes not allowed
+		Player mrX = SeededStart.mrX(seed, makeTickets(1 + random.nextInt(4), random.nextInt(3),
+				random.nextInt(3), random.nextInt(3), random.nextInt(3)));
+		return gameStateFactory.build(standard24MoveSetup(), mrX, detectives);
+	}
+}
@@ -0,0 +1,59 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+
+/**
+ * Tests the candidate locations of Mr X always include where he is
+ */
+public class MrXCandidatesTest extends ParameterisedModelTestBase {
+
+	@Test public void testCandidatesContainMrXOverRandomPlayouts() {
+		for (int seed = 0; seed < 50; seed++) {
+			Random random = new Random(seed);
+			Player mrX = SeededStart.mrX(seed);
+			int mrXLocation = mrX.location();
+			GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, SeededStart.detectives(seed, 5));
+			MrXCandidates candidates = MrXCandidates.of(state.getSetup());
+			while (state.getWinner().isEmpty()) {
+				candidates.update(state);
+				assertThat(candidates.contains(mrXLocation)).as("seed %d", seed).isTrue();
+				// Updating every turn also rules out stations detectives passed through
+				assertThat(MrXCandidates.of(state).stations()).containsAll(candidates.stations());
+				var log = state.getMrXTravelLog();
+				if (!log.isEmpty() && log.get(log.size() - 1).location().isPresent())
+					assertThat(candidates.toArray()).containsExactly(mrXLocation);
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX())
+					mrXLocation = move.accept(new FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+				state = state.advance(move);
+			}
+		}
+	}
+
+	@Test public void testExpandsByTicketAndRemovesDetectives() {
+		MrXCandidates candidates = new MrXCandidates(CompiledGraph.of(standardGraph()), ImmutableSet.of(1));
+		candidates.apply(LogEntry.hidden(TAXI));
+		assertThat(candidates.stations()).containsExactlyInAnyOrder(8, 9);
+		candidates.remove(9);
+		candidates.apply(LogEntry.hidden(SECRET));
+		assertThat(candidates.stations())
+				.isEqualTo(ImmutableSet.copyOf(standardGraph().adjacentNodes(8)));
+		candidates.apply(LogEntry.reveal(TAXI, 19));
+		assertThat(candidates.toArray()).containsExactly(19);
+		assertThat(candidates.applied()).isEqualTo(3);
+		candidates.reset();
+		assertThat(candidates.toArray()).containsExactly(1);
+	}
+}
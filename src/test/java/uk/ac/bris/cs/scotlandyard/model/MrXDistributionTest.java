@@ -0,0 +1,94 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the distribution of Mr X's location against his candidate stations
+ */
+public class MrXDistributionTest extends ParameterisedModelTestBase {
+
+	@Test public void testSupportMatchesCandidatesOverRandomPlayouts() {
+		for (int seed = 0; seed < 30; seed++) {
+			Random random = new Random(seed);
+			Player mrX = SeededStart.mrX(seed);
+			int mrXLocation = mrX.location();
+			GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, SeededStart.detectives(seed, 5));
+			MrXCandidates candidates = MrXCandidates.of(state.getSetup());
+			MrXDistribution distribution = MrXDistribution.of(state.getSetup(),
+					seed % 2 == 0 ? MrXMovementModel.uniform() : MrXMovementModel.awayFromDetectives(2));
+			while (state.getWinner().isEmpty()) {
+				candidates.update(state);
+				distribution.update(state);
+				assertThat(distribution.probability(mrXLocation)).as("seed %d", seed).isPositive();
+				assertThat(candidates.stations()).containsAll(distribution.stations());
+				assertThat(Arrays.stream(distribution.toArray()).sum()).isCloseTo(1, within(1e-9));
+				assertThat(distribution.isDense()).isEqualTo(distribution.size() > 199 / 8);
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX())
+					mrXLocation = move.accept(new FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+				state = state.advance(move);
+			}
+		}
+	}
+
+	@Test public void testUniformModelSpreadsEvenlyOverJourneys() {
+		// Taxis go from 1 to 8 and 9, from 8 to 1, 18 and 19, and from 9 to 1, 19 and 20
+		MrXDistribution distribution = new MrXDistribution(CompiledGraph.of(standardGraph()),
+				MrXMovementModel.uniform(), ImmutableSet.of(1));
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 1), redPlayer());
+		state = state.advance(taxi(MRX, 1, 8));
+		distribution.update(state);
+		assertThat(distribution.probability(8)).isCloseTo(0.5, within(1e-9));
+		assertThat(distribution.probability(9)).isCloseTo(0.5, within(1e-9));
+		state = state.advance(taxi(RED, 29, 41));
+		state = state.advance(taxi(MRX, 8, 18));
+		distribution.update(state);
+		assertThat(distribution.stations()).containsExactly(1, 18, 19, 20);
+		assertThat(distribution.probability(1)).isCloseTo(1 / 3.0, within(1e-9));
+		assertThat(distribution.probability(18)).isCloseTo(1 / 6.0, within(1e-9));
+		assertThat(distribution.probability(19)).isCloseTo(1 / 3.0, within(1e-9));
+		assertThat(distribution.probability(20)).isCloseTo(1 / 6.0, within(1e-9));
+		assertThat(distribution.applied()).isEqualTo(2);
+	}
+
+	@Test public void testSamplesFollowProbabilities() {
+		MrXDistribution distribution = new MrXDistribution(CompiledGraph.of(standardGraph()),
+				MrXMovementModel.uniform(), ImmutableSet.of(1));
+		distribution.update(gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 1), redPlayer()));
+		assertThat(distribution.isDense()).isFalse();
+		assertThat(distribution.sample(new SplittableRandom(1))).isEqualTo(1);
+		MrXDistribution spread = new MrXDistribution(CompiledGraph.of(standardGraph()),
+				MrXMovementModel.uniform(), ScotlandYard.MRX_LOCATIONS);
+		SplittableRandom random = new SplittableRandom(42);
+		int[] counts = new int[200];
+		for (int i = 0; i < 120_000; i++) counts[spread.sample(random)]++;
+		for (int station : ScotlandYard.MRX_LOCATIONS) {
+			assertThat(counts[station]).isBetween(9_000, 11_000);
+		}
+		assertThat(Arrays.stream(counts).sum()).isEqualTo(120_000);
+		assertThatThrownBy(() -> new MrXDistribution(CompiledGraph.of(standardGraph()),
+				MrXMovementModel.uniform(), ImmutableSet.of()).sample(random))
+				.isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> MrXMovementModel.awayFromDetectives(-1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,77 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.ALL_PIECES;
+
+/**
+ * Tests packing moves into longs and the move list
+ */
+public class PackedMoveTest {
+
+	@Test public void testEveryFieldRoundTrips() {
+		Random random = new Random(42);
+		for (int i = 0; i < 10_000; i++) {
+			Piece piece = ALL_PIECES.get(random.nextInt(ALL_PIECES.size()));
+			Ticket ticket1 = Ticket.values()[random.nextInt(Ticket.values().length)];
+			Ticket ticket2 = Ticket.values()[random.nextInt(Ticket.values().length)];
+			int source = random.nextInt(PackedMove.MAX_STATION + 1);
+			int destination1 = random.nextInt(PackedMove.MAX_STATION + 1);
+			int destination2 = random.nextInt(PackedMove.MAX_STATION + 1);
+			for (Move move : ImmutableList.of(
+					new SingleMove(piece, source, ticket1, destination1),
+					new DoubleMove(piece, source, ticket1, destination1, ticket2, destination2))) {
+				long packed = PackedMove.pack(move);
+				assertThat(packed).isNotZero();
+				assertThat(PackedMove.unpack(packed)).isEqualTo(move);
+				assertThat(PackedMove.piece(packed)).isEqualTo(piece);
+				assertThat(PackedMove.source(packed)).isEqualTo(source);
+				assertThat(PackedMove.ticket1(packed)).isEqualTo(ticket1);
+				assertThat(PackedMove.destination1(packed)).isEqualTo(destination1);
+			}
+		}
+	}
+
+	@Test public void testExtremesRoundTrip() {
+		Move low = new SingleMove(MRX, 0, Ticket.TAXI, 0);
+		Move high = new DoubleMove(YELLOW, PackedMove.MAX_STATION, Ticket.SECRET,
+				PackedMove.MAX_STATION, Ticket.SECRET, PackedMove.MAX_STATION);
+		assertThat(PackedMove.pack(low)).isNotZero();
+		assertThat(PackedMove.unpack(PackedMove.pack(low))).isEqualTo(low);
+		assertThat(PackedMove.unpack(PackedMove.pack(high))).isEqualTo(high);
+		assertThat(PackedMove.destination(PackedMove.pack(high))).isEqualTo(PackedMove.MAX_STATION);
+	}
+
+	@Test public void testStationOutOfRangeThrows() {
+		assertThatThrownBy(() -> PackedMove.pack(new SingleMove(MRX, 1, Ticket.TAXI, PackedMove.MAX_STATION + 1)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> PackedMove.pack(new SingleMove(MRX, -1, Ticket.TAXI, 1)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testMoveListGrowsAndClears() {
+		MoveList moves = new MoveList(0);
+		for (int i = 0; i < 100; i++) moves.add(PackedMove.single(0, i, 0, i + 1));
+		assertThat(moves.size()).isEqualTo(100);
+		assertThat(PackedMove.source(moves.get(99))).isEqualTo(99);
+		assertThat(moves.contains(PackedMove.single(0, 42, 0, 43))).isTrue();
+		moves.swap(0, 99);
+		assertThat(PackedMove.source(moves.get(0))).isEqualTo(99);
+		assertThat(moves.toMoves()).hasSize(100);
+		moves.clear();
+		assertThat(moves.isEmpty()).isTrue();
+		assertThatThrownBy(() -> moves.get(0)).isInstanceOf(IndexOutOfBoundsException.class);
+	}
+}
@@ -0,0 +1,63 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+
+/**
+ * Tests the packed ticket counts of players
+ */
+public class PlayerTest {
+
+	@Test public void testTicketMapMatchesCounts() {
+		Player player = new Player(MRX, ImmutableMap.of(TAXI, 4, BUS, 0, SECRET, 255), 1);
+		assertThat(player.tickets()).isEqualTo(ImmutableMap.of(TAXI, 4, BUS, 0, SECRET, 255));
+		assertThat(player.use(TAXI).tickets()).isEqualTo(ImmutableMap.of(TAXI, 3, BUS, 0, SECRET, 255));
+		assertThat(player.count(DOUBLE)).isZero();
+		assertThat(player.count(SECRET)).isEqualTo(255);
+	}
+
+	@Test public void testGiveOnlyAddsTicketsThePlayerWasGiven() {
+		Player player = new Player(MRX, ImmutableMap.of(TAXI, 0), 1);
+		assertThat(player.give(BUS)).isSameAs(player);
+		assertThat(player.give(ImmutableList.of(TAXI, BUS, TAXI)).tickets())
+				.isEqualTo(ImmutableMap.of(TAXI, 2));
+	}
+
+	@Test public void testBulkUseChecksEveryTicket() {
+		Player player = new Player(MRX, ImmutableMap.of(TAXI, 1, DOUBLE, 1), 1);
+		assertThatThrownBy(() -> player.use(ImmutableList.of(TAXI, TAXI, DOUBLE)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(player.use(ImmutableList.of(TAXI, DOUBLE)).tickets())
+				.isEqualTo(ImmutableMap.of(TAXI, 0, DOUBLE, 0));
+	}
+
+	@Test public void testEqualsIgnoresHowTicketsWereReached() {
+		Player given = new Player(MRX, ImmutableMap.of(TAXI, 2, BUS, 1), 5);
+		Player used = new Player(MRX, ImmutableMap.of(BUS, 2, TAXI, 2), 7).use(BUS).at(5);
+		assertThat(used).isEqualTo(given);
+		assertThat(used.hashCode()).isEqualTo(given.hashCode());
+		assertThat(new Player(MRX, ImmutableMap.of(TAXI, 2, BUS, 0), 5))
+				.isNotEqualTo(new Player(MRX, ImmutableMap.of(TAXI, 2), 5));
+	}
+
+	@Test public void testCountsOutOfRangeThrow() {
+		for (int count : new int[]{-1, 256}) {
+			assertThatThrownBy(() -> new Player(MRX, ImmutableMap.of(Ticket.TAXI, count), 1))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+		assertThatThrownBy(() -> new Player(MRX, ImmutableMap.of(TAXI, 255), 1).give(TAXI))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,77 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests random playouts only make available moves, draw them uniformly and agree on the winner
+ */
+public class PlayoutEngineTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static SearchState start(int seed, int detectives) {
+		return SearchState.of(new GameSetup(graph, ScotlandYard.STANDARD24MOVES),
+				SeededStart.mrX(seed), SeededStart.detectives(seed, detectives));
+	}
+
+	@Test public void testPlayoutsMakeAvailableMovesAndAgreeOnWinner() {
+		for (int seed = 0; seed < 100; seed++) {
+			SearchState state = start(seed, 1 + seed % 5);
+			PlayoutEngine engine = new PlayoutEngine(seed);
+			engine.load(state);
+			for (long move = engine.step(); move != 0; move = engine.step()) {
+				assertThat(state.getAvailableMoves()).as("seed %d", seed).contains(PackedMove.unpack(move));
+				state.make(move);
+			}
+			assertThat(state.isGameOver()).isTrue();
+			assertThat(state.getWinner().contains(MRX))
+					.isEqualTo(engine.play(state)).isEqualTo(new PlayoutEngine(0).play(state));
+		}
+	}
+
+	@Test public void testMovesAreDrawnUniformly() {
+		SearchState state = start(3, 5);
+		ImmutableSet<Move> moves = state.getAvailableMoves();
+		PlayoutEngine engine = new PlayoutEngine(new SplittableRandom(11));
+		Map<Move, Integer> counts = new HashMap<>();
+		int draws = moves.size() * 200;
+		for (int i = 0; i < draws; i++) {
+			engine.load(state);
+			counts.merge(PackedMove.unpack(engine.step()), 1, Integer::sum);
+		}
+		assertThat(counts.keySet()).isEqualTo(moves);
+		// Each count is binomial with mean 200 and standard deviation about 14
+		assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(110, 290));
+	}
+
+	@Test public void testStatisticsCountPliesAndGames() {
+		PlayoutEngine engine = new PlayoutEngine(5);
+		assertThat(engine.pliesPerSecond()).isZero();
+		SearchState state = start(5, 5);
+		for (int i = 0; i < 20; i++) engine.play(state);
+		assertThat(state.depth()).isZero();
+		assertThat(engine.games()).isEqualTo(20);
+		assertThat(engine.plies()).isGreaterThanOrEqualTo(20);
+		assertThat(engine.gamesPerSecond()).isPositive();
+		engine.resetStatistics();
+		assertThat(engine.plies()).isZero();
+	}
+}
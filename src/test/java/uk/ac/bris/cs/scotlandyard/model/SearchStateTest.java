@@ -0,0 +1,145 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Plays random games on both a game state and a {@link SearchState} and checks they agree
+ */
+public class SearchStateTest extends ParameterisedModelTestBase {
+
+	private static final int GAMES = 150;
+
+	@Test public void testMatchesGameStateOverRandomPlayouts() {
+		for (int seed = 0; seed < GAMES; seed++) {
+			Random random = new Random(seed);
+			GameSetup setup = randomSetup(random);
+			Player mrX = randomMrX(random, seed);
+			ImmutableList<Player> detectives = randomDetectives(random, seed);
+			GameState state = gameStateFactory.build(setup, mrX, detectives);
+			SearchState search = SearchState.of(setup, mrX, detectives);
+			int mrXLocation = mrX.location();
+			while (true) {
+				assertSameState(state, search, mrXLocation, seed);
+				if (state.getWinner().isEmpty() && search.isMrXTurn())
+					assertThat(SearchState.of(state, mrXLocation).getAvailableMoves())
+							.as("seed %d, search state built from the board", seed)
+							.isEqualTo(state.getAvailableMoves());
+				if (!state.getWinner().isEmpty()) break;
+				var available = state.getAvailableMoves().asList();
+				Move move = available.get(random.nextInt(available.size()));
+				if (move.commencedBy().isMrX())
+					mrXLocation = move.accept(new FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+				state = state.advance(move);
+				search.make(move);
+			}
+		}
+	}
+
+	@Test public void testUnmakeRestoresEveryPreviousState() {
+		for (int seed = 0; seed < GAMES; seed++) {
+			Random random = new Random(seed);
+			GameSetup setup = randomSetup(random);
+			Player mrX = randomMrX(random, seed);
+			ImmutableList<Player> detectives = randomDetectives(random, seed);
+			SearchState search = SearchState.of(setup, mrX, detectives);
+			MoveList packed = new MoveList();
+			List<ImmutableSet<Move>> moves = new ArrayList<>();
+			List<ImmutableSet<Piece>> winners = new ArrayList<>();
+			List<Long> keys = new ArrayList<>();
+			while (true) {
+				moves.add(search.getAvailableMoves());
+				winners.add(search.getWinner());
+				keys.add(search.getPositionKey());
+				if (search.isGameOver()) break;
+				search.generate(packed);
+				assertThat(packed.toMoveSet()).isEqualTo(moves.get(moves.size() - 1));
+				long move = packed.get(random.nextInt(packed.size()));
+				assertThat(search.isLegal(PackedMove.unpack(move))).isTrue();
+				search.make(move);
+			}
+			assertThat(search.depth()).isEqualTo(moves.size() - 1);
+			for (int i = moves.size() - 1; i > 0; i--) {
+				search.unmake();
+				assertThat(search.getAvailableMoves()).as("seed %d, depth %d", seed, i - 1)
+						.isEqualTo(moves.get(i - 1));
+				assertThat(search.getWinner()).isEqualTo(winners.get(i - 1));
+				assertThat(search.getPositionKey()).isEqualTo(keys.get(i - 1));
+			}
+			assertThat(search.depth()).isZero();
+			assertThat(search.logSize()).isZero();
+			assertThat(search.location(0)).isEqualTo(mrX.location());
+		}
+	}
+
+	@Test public void testUnmakeWithoutMovesThrows() {
+		SearchState search = SearchState.of(standard24MoveSetup(), blackPlayer(),
+				ImmutableList.of(redPlayer(), greenPlayer()));
+		assertThatThrownBy(search::unmake).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testIsLegalRejectsMovesOutOfTurn() {
+		SearchState search = SearchState.of(standard24MoveSetup(), blackPlayer(),
+				ImmutableList.of(redPlayer(), greenPlayer()));
+		assertThat(search.isLegal(taxi(MRX, 35, 22))).isTrue();
+		assertThat(search.isLegal(taxi(MRX, 35, 1))).isFalse();
+		assertThat(search.isLegal(taxi(Piece.Detective.RED, 26, 15))).isFalse();
+		assertThat(search.isLegal(taxi(Piece.Detective.BLUE, 26, 15))).isFalse();
+	}
+
+	private static void assertSameState(GameState state, SearchState search, int mrXLocation, int seed) {
+		assertThat(search.getWinner()).as("seed %d, winner", seed).isEqualTo(state.getWinner());
+		assertThat(search.getAvailableMoves()).as("seed %d, moves", seed)
+				.isEqualTo(state.getAvailableMoves());
+		assertThat(search.location(0)).isEqualTo(mrXLocation);
+		for (int slot = 0; slot < search.slots(); slot++) {
+			Piece piece = search.pieces().get(slot);
+			if (piece.isDetective())
+				assertThat(search.location(slot))
+						.isEqualTo(state.getDetectiveLocation((Piece.Detective) piece).orElseThrow());
+			for (Ticket ticket : Ticket.values()) {
+				assertThat(search.tickets(slot, ticket)).as("seed %d, %s %s", seed, piece, ticket)
+						.isEqualTo(state.getPlayerTickets(piece).orElseThrow().getCount(ticket));
+			}
+		}
+		assertThat(search.getZobristKey()).as("seed %d, key", seed).isEqualTo(state.getZobristKey());
+		ImmutableList<LogEntry> log = state.getMrXTravelLog();
+		assertThat(search.logSize()).isEqualTo(log.size());
+		for (int i = 0; i < log.size(); i++) {
+			assertThat(search.logTicket(i)).isEqualTo(log.get(i).ticket());
+			assertThat(search.logLocation(i)).isEqualTo(log.get(i).location().orElse(-1));
+		}
+	}
+
+	// Short games with few tickets so every way of ending the game comes up
+	private static GameSetup randomSetup(Random random) {
+		var moves = ImmutableList.<Boolean>builder();
+		int rounds = 2 + random.nextInt(23);
+		for (int i = 0; i < rounds; i++) moves.add(random.nextInt(4) == 0);
+		return new GameSetup(standardGraph(), moves.build());
+	}
+
+	private static Player randomMrX(Random random, int seed) {
+		return SeededStart.mrX(seed, makeTickets(random.nextInt(6), random.nextInt(4), random.nextInt(3),
+				random.nextInt(3), random.nextInt(4)));
+	}
+
+	private static ImmutableList<Player> randomDetectives(Random random, int seed) {
+		return SeededStart.detectives(seed, 1 + random.nextInt(5),
+				() -> makeTickets(random.nextInt(10), random.nextInt(6), random.nextInt(3), 0, 0));
+	}
+}
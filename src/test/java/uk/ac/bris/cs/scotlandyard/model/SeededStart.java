@@ -0,0 +1,66 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The players of a game started from a seed, for tests and benchmarks that play from many starts.
+ * Mr X is at {@link ScotlandYard#generateMrXLocation(int)} and the detectives are at
+ * {@link ScotlandYard#generateDetectiveLocations(int, int)}, played by the detective pieces in the
+ * order of {@link ScotlandYard#ALL_PIECES}.
+ */
+public final class SeededStart {
+
+	private SeededStart() {}
+
+	/**
+	 * @param seed the seed
+	 * @param tickets the tickets Mr X starts with
+	 * @return Mr X at the seed's start location
+	 */
+	@Nonnull public static Player mrX(int seed, @Nonnull ImmutableMap<Ticket, Integer> tickets) {
+		return new Player(Piece.MrX.MRX, requireNonNull(tickets), ScotlandYard.generateMrXLocation(seed));
+	}
+
+	/**
+	 * @param seed the seed
+	 * @return Mr X at the seed's start location with {@link ScotlandYard#defaultMrXTickets()}
+	 */
+	@Nonnull public static Player mrX(int seed) { return mrX(seed, ScotlandYard.defaultMrXTickets()); }
+
+	/**
+	 * @param seed the seed
+	 * @param count the number of detectives
+	 * @param tickets gives the tickets of each detective in turn
+	 * @return the detectives at the seed's start locations
+	 */
+	@Nonnull public static ImmutableList<Player> detectives(int seed,
+	                                                        int count,
+	                                                        @Nonnull Supplier<ImmutableMap<Ticket, Integer>> tickets) {
+		requireNonNull(tickets);
+		ImmutableList<Integer> locations = ScotlandYard.generateDetectiveLocations(seed, count);
+		ImmutableList.Builder<Player> detectives = ImmutableList.builder();
+		for (int i = 0; i < locations.size(); i++) {
+			detectives.add(new Player(ScotlandYard.ALL_PIECES.get(i + 1), tickets.get(), locations.get(i)));
+		}
+		return detectives.build();
+	}
+
+	/**
+	 * @param seed the seed
+	 * @param count the number of detectives
+	 * @return the detectives at the seed's start locations with
+	 * {@link ScotlandYard#defaultDetectiveTickets()}
+	 */
+	@Nonnull public static ImmutableList<Player> detectives(int seed, int count) {
+		return detectives(seed, count, ScotlandYard::defaultDetectiveTickets);
+	}
+}
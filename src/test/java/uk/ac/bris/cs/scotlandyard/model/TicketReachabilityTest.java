@@ -0,0 +1,113 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the ticket limited search against a search without pruning
+ */
+public class TicketReachabilityTest extends ParameterisedModelTestBase {
+
+	@Test public void testMovesMatchExhaustiveSearch() {
+		CompiledGraph graph = CompiledGraph.of(standardGraph());
+		Random random = new Random(7);
+		List<Integer> stations = ImmutableList.copyOf(standardGraph().nodes());
+		for (int i = 0; i < 60; i++) {
+			int source = stations.get(random.nextInt(stations.size()));
+			Player player = new Player(MRX, makeTickets(random.nextInt(6), random.nextInt(4),
+					random.nextInt(3), 0, random.nextInt(2)), source);
+			TicketReachability reachability = TicketReachability.of(graph, player);
+			Map<Integer, Integer> expected = exhaustive(player);
+			for (int station : stations) {
+				assertThat(reachability.moves(station)).as("%s to %d", player, station)
+						.isEqualTo(expected.getOrDefault(station, DistanceTable.UNREACHABLE));
+			}
+			for (int k = 0; k < 4; k++) {
+				int moves = k;
+				assertThat(reachability.reachable(k)).containsExactlyInAnyOrderElementsOf(
+						expected.entrySet().stream().filter(e -> e.getValue() <= moves)
+								.map(Map.Entry::getKey).collect(ImmutableSet.toImmutableSet()));
+			}
+		}
+	}
+
+	@Test public void testPlentyOfTicketsMatchesDistanceTable() {
+		CompiledGraph graph = CompiledGraph.of(standardGraph());
+		DistanceTable table = DistanceTable.detective(graph);
+		for (int source : ImmutableList.of(1, 67, 128, 199)) {
+			TicketReachability reachability = TicketReachability.of(graph,
+					new Player(RED, makeTickets(50, 50, 50, 0, 0), source));
+			for (int station : graph.nodes()) {
+				assertThat(reachability.moves(station)).isEqualTo(table.distance(source, station));
+			}
+		}
+	}
+
+	@Test public void testDetectivesAreSolvedTogether() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(),
+				new Player(RED, makeTickets(1, 0, 0, 0, 0), 1),
+				new Player(BLUE, makeTickets(0, 1, 1, 0, 0), 46));
+		var detectives = TicketReachability.ofDetectives(state, 3);
+		assertThat(detectives.keySet()).containsExactly(RED, BLUE);
+		assertThat(detectives.get(RED).reachable(3)).containsExactly(1, 8, 9);
+		assertThat(detectives.get(BLUE).moves(1)).isEqualTo(1);
+		assertThat(detectives.get(BLUE).moves(8)).isEqualTo(DistanceTable.UNREACHABLE);
+		int blue = CompiledGraph.of(standardGraph()).indexOf(46);
+		assertThat(detectives.get(BLUE).reachableIndices(0)[blue >>> 6]).isEqualTo(1L << blue);
+		assertThatThrownBy(() -> TicketReachability.ofDetectives(state, -1))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> TicketReachability.of(CompiledGraph.of(standardGraph()),
+				new Player(MRX, defaultMrXTickets(), 200))).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	// Searches every station and ticket combination without dropping any
+	private static Map<Integer, Integer> exhaustive(Player player) {
+		Map<List<Integer>, Integer> seen = new HashMap<>();
+		Map<Integer, Integer> fewest = new HashMap<>();
+		ArrayDeque<List<Integer>> queue = new ArrayDeque<>();
+		List<Integer> start = ImmutableList.of(player.location(), player.tickets().get(Ticket.TAXI),
+				player.tickets().get(Ticket.BUS), player.tickets().get(Ticket.UNDERGROUND),
+				player.tickets().get(Ticket.SECRET));
+		seen.put(start, 0);
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			List<Integer> state = queue.poll();
+			int moves = seen.get(state);
+			fewest.merge(state.get(0), moves, Math::min);
+			for (int next : standardGraph().adjacentNodes(state.get(0))) {
+				for (Transport transport : standardGraph().edgeValueOrDefault(state.get(0), next, ImmutableSet.of())) {
+					for (Ticket ticket : ImmutableList.of(transport.requiredTicket(), Ticket.SECRET)) {
+						int slot = ticket == Ticket.SECRET ? 4 : ticket.ordinal() + 1;
+						if (state.get(slot) == 0) continue;
+						List<Integer> after = new ArrayList<>(state);
+						after.set(0, next);
+						after.set(slot, state.get(slot) - 1);
+						if (seen.putIfAbsent(after, moves + 1) == null) queue.add(after);
+					}
+				}
+			}
+		}
+		return fewest;
+	}
+}
@@ -0,0 +1,55 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.LogEntry.hidden;
+import static uk.ac.bris.cs.scotlandyard.model.LogEntry.reveal;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+
+/**
+ * Tests the persistent travel log
+ */
+public class TravelLogTest {
+
+	@Test public void testAppendDoesNotChangeTheOriginal() {
+		TravelLog one = TravelLog.empty().append(hidden(TAXI));
+		TravelLog two = one.append(reveal(BUS, 46));
+		TravelLog branch = one.append(hidden(SECRET));
+		assertThat(one.asList()).containsExactly(hidden(TAXI));
+		assertThat(two.asList()).containsExactly(hidden(TAXI), reveal(BUS, 46));
+		assertThat(branch.asList()).containsExactly(hidden(TAXI), hidden(SECRET));
+		assertThat(TravelLog.empty().isEmpty()).isTrue();
+	}
+
+	@Test public void testGetMatchesListBeforeAndAfterItIsBuilt() {
+		TravelLog log = TravelLog.of(ImmutableList.of(hidden(TAXI), reveal(BUS, 46), hidden(SECRET)));
+		assertThat(log.get(0)).isEqualTo(hidden(TAXI));
+		assertThat(log.get(1)).isEqualTo(reveal(BUS, 46));
+		assertThat(log.last()).isEqualTo(hidden(SECRET));
+		log.asList();
+		assertThat(log.get(2)).isEqualTo(hidden(SECRET));
+		assertThatThrownBy(() -> log.get(3)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> TravelLog.empty().last()).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testListIsBuiltOnceAndExtendsEarlierLists() {
+		TravelLog one = TravelLog.empty().append(hidden(TAXI));
+		assertThat(one.asList()).isSameAs(one.asList());
+		TravelLog three = one.append(hidden(BUS)).append(reveal(TAXI, 1));
+		assertThat(three.asList()).containsExactly(hidden(TAXI), hidden(BUS), reveal(TAXI, 1));
+	}
+
+	@Test public void testEqualLogsAreEqualWhetherOrNotShared() {
+		TravelLog a = TravelLog.empty().append(hidden(TAXI)).append(reveal(BUS, 46));
+		TravelLog b = TravelLog.of(ImmutableList.of(hidden(TAXI), reveal(BUS, 46)));
+		assertThat(a).isEqualTo(b).hasSameHashCodeAs(b);
+		assertThat(a).isNotEqualTo(b.append(hidden(TAXI)));
+		assertThat(a).isNotEqualTo(TravelLog.of(ImmutableList.of(hidden(TAXI), reveal(BUS, 47))));
+	}
+}
@@ -0,0 +1,68 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the two-hop routes against the graph they were built from
+ */
+public class TwoHopTableTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	@Test public void testRoutesMatchGraph() {
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		TwoHopTable table = TwoHopTable.of(compiled);
+		for (int source = 0; source < compiled.size(); source++) {
+			for (int edge1 = compiled.start(source); edge1 < compiled.end(source); edge1++) {
+				int middle = compiled.target(edge1);
+				Set<String> expected = new HashSet<>();
+				for (Ticket ticket1 : Ticket.values()) {
+					if (!compiled.canUse(edge1, ticket1)) continue;
+					for (int edge2 = compiled.start(middle); edge2 < compiled.end(middle); edge2++) {
+						for (Ticket ticket2 : Ticket.values()) {
+							if (compiled.canUse(edge2, ticket2))
+								expected.add(ticket1 + " " + ticket2 + " " + edge2);
+						}
+					}
+				}
+				Set<String> actual = new HashSet<>();
+				int[] routes = table.routes(edge1);
+				for (int route : routes) {
+					assertThat(actual.add(Ticket.values()[TwoHopTable.ticket1(route)] + " "
+							+ Ticket.values()[TwoHopTable.ticket2(route)] + " "
+							+ TwoHopTable.edge2(route))).isTrue();
+				}
+				assertThat(actual).isEqualTo(expected);
+				assertThat(table.routes(edge1)).isSameAs(routes);
+			}
+		}
+	}
+
+	@Test public void testTableIsSharedAcrossSetupsAndThreads() {
+		GameSetup setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		assertThat(TwoHopTable.of(setup)).isSameAs(TwoHopTable.of(CompiledGraph.of(graph)));
+		CompiledGraph compiled = CompiledGraph.of(graph);
+		Set<int[]> arrays = ConcurrentHashMap.newKeySet();
+		IntStream.range(0, 64).parallel().forEach(i -> arrays.add(TwoHopTable.of(compiled).routes(7)));
+		assertThat(arrays).hasSize(1);
+	}
+}
@@ -0,0 +1,79 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the Zobrist keys kept by game states
+ */
+public class ZobristTest extends ParameterisedModelTestBase {
+
+	@Test public void testKeyOfNewGameMatchesKeyComputedFromScratch() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer());
+		assertThat(state.getZobristKey()).isEqualTo(Zobrist.of(new ImmutableBoard(state)));
+	}
+
+	@Test public void testDetectiveMoveOrderDoesNotChangeKey() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 106);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 94);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, blue)
+				.advance(taxi(MRX, 106, 105));
+		GameState redFirst = state.advance(taxi(RED, 91, 56)).advance(taxi(BLUE, 94, 95));
+		GameState blueFirst = state.advance(taxi(BLUE, 94, 95)).advance(taxi(RED, 91, 56));
+		assertThat(redFirst.getZobristKey()).isEqualTo(blueFirst.getZobristKey());
+		assertThat(redFirst.getZobristKey()).isNotEqualTo(state.getZobristKey());
+	}
+
+	@Test public void testKeyDoesNotRevealMrXLocation() {
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		GameState north = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106), red).advance(taxi(MRX, 106, 105));
+		GameState south = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 35), red).advance(taxi(MRX, 35, 22));
+		assertThat(north.getZobristKey()).isEqualTo(south.getZobristKey());
+	}
+
+	@Test public void testKeysMatchKeysComputedFromScratchOverRandomPlayouts() {
+		for (int seed = 0; seed < 50; seed++) {
+			Random random = new Random(seed);
+			ImmutableList<Player> detectives = SeededStart.detectives(seed, 5);
+			Player mrX = SeededStart.mrX(seed);
+			GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, detectives);
+			// Tracks who is yet to move, which the board does not show
+			SearchState search = SearchState.of(standard24MoveSetup(), mrX, detectives);
+			int compared = 0;
+			while (state.getWinner().isEmpty()) {
+				var moves = state.getAvailableMoves().asList();
+				boolean stuck = false;
+				for (int slot = 1; slot < search.slots(); slot++) {
+					Piece piece = search.pieces().get(slot);
+					stuck |= search.isRemaining(slot)
+							&& moves.stream().noneMatch(m -> m.commencedBy() == piece);
+				}
+				if (!stuck) {
+					assertThat(state.getZobristKey()).as("seed %d", seed)
+							.isEqualTo(Zobrist.of(new ImmutableBoard(state)));
+					compared++;
+				}
+				Move move = moves.get(random.nextInt(moves.size()));
+				state = state.advance(move);
+				search.make(move);
+			}
+			assertThat(compared).isPositive();
+		}
+	}
+}